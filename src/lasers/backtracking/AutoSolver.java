@@ -0,0 +1,42 @@
+package lasers.backtracking;
+
+import java.util.Optional;
+
+/**
+ * Picks the engine for a safe by its shape: narrow safes are swept by
+ * the ProfileSolver, whose work only grows linearly along the long side,
+ * and the rest are covered by the DancingLinksSolver.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class AutoSolver implements Solver<SafeConfig> {
+    /** safes whose short side is at most this many tiles count as narrow */
+    public static final int NARROW = ProfileSolver.MAX_WIDTH;
+
+    /**
+     * Is the safe narrow enough for the profile sweep?
+     *
+     * @param config a config of the safe
+     * @return true if its short side is at most NARROW tiles
+     */
+    public static boolean isNarrow(SafeConfig config) {
+        return ProfileSolver.fits(config);
+    }
+
+    /**
+     * Try find a solution, if one exists, for a safe.
+     *
+     * @param config the starting config of a safe
+     * @param control the handle: deadline, cancellation and progress
+     * @return A solution config, or Optional.empty() if no solution or
+     * the search was stopped
+     */
+    @Override
+    public Optional<Configuration> solve(SafeConfig config, SolveControl control) {
+        if (isNarrow(config)) {
+            return new ProfileSolver().solve(config, control);
+        }
+        return new DancingLinksSolver().solve(config, control);
+    }
+}
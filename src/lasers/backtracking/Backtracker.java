@@ -1,9 +1,19 @@
 package lasers.backtracking;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class represents the classic recursive backtracking algorithm.
@@ -18,9 +28,14 @@ import java.util.Optional;
  * @author Aby Tiet
  * @author Annie Tiet
  */
-public class Backtracker {
+public class Backtracker implements Solver<Configuration> {
+
+    /** how many levels the search stacks hold before they have to grow */
+    private static final int INITIAL_DEPTH = 256;
 
     private boolean debug;
+    /** where the search is traced, or null */
+    private SearchTrace trace;
 
     /**
      * Initialize a new backtracker.
@@ -34,6 +49,28 @@ public class Backtracker {
         }
     }
 
+    /**
+     * Trace every search from now on into a binary trace, which is much
+     * cheaper than debug output.  The parallel search isn't traced.
+     *
+     * @param trace the trace, or null to stop tracing
+     */
+    public void setTrace(SearchTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Trace a configuration, if there is a trace.
+     *
+     * @param parent the node id of the config it is a successor of
+     * @param config the config
+     * @param verdict what the search made of it
+     * @return its node id, or -1 if there is no trace
+     */
+    private long trace(long parent, Object config, byte verdict) {
+        return this.trace == null ? -1 : this.trace.record(parent, config, verdict);
+    }
+
     /**
      * A utility routine for printing out various debug messages.
      *
@@ -41,7 +78,7 @@ public class Backtracker {
      *               successor, e.g.)
      * @param config The config to display
      */
-    private void debugPrint(String msg, Configuration config) {
+    private void debugPrint(String msg, Object config) {
         if (this.debug) {
             System.out.println(msg + ":\n" + config);
         }
@@ -50,29 +87,233 @@ public class Backtracker {
     /**
      * Try find a solution, if one exists, for a given configuration.
      *
+     * The search keeps its own stack of successor iterators instead of
+     * recursing once per level, so how deep it can go is only limited by
+     * the heap, not the thread's stack.
+     *
+     * @param config A valid configuration
+     * @param control the handle: deadline, cancellation and progress
+     * @return A solution config, or Optional.empty() if no solution or
+     * the search was stopped
+     */
+    @Override
+    public Optional<Configuration> solve(Configuration config, SolveControl control) {
+        Iterator<Configuration> solutions = new SolutionIterator(config, control);
+        return solutions.hasNext() ? Optional.of(solutions.next()) : Optional.empty();
+    }
+
+    /**
+     * Every solution for a given configuration, in the order solve would
+     * reach them.  The search runs lazily as the stream is consumed, so
+     * only the configurations on the current path are held in memory.
+     * A goal is treated as a leaf: its successors are not searched.
+     *
+     * @param config A valid configuration
+     * @return a sequential stream of solution configs
+     */
+    public Stream<Configuration> solutions(Configuration config) {
+        return solutions(config, new SolveControl());
+    }
+
+    /**
+     * Every solution for a given configuration, within the limits of a
+     * solve handle: the stream just ends if the search is stopped.
+     *
+     * @param config A valid configuration
+     * @param control the handle: deadline, cancellation and progress
+     * @return a sequential stream of solution configs
+     */
+    public Stream<Configuration> solutions(Configuration config, SolveControl control) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                new SolutionIterator(config, control),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * The first solutions for a given configuration; the search stops
+     * once max of them have been found.
+     *
+     * @param config A valid configuration
+     * @param max the most solutions to return
+     * @return a sequential stream of at most max solution configs
+     */
+    public Stream<Configuration> solutions(Configuration config, long max) {
+        return solutions(config).limit(max);
+    }
+
+    /**
+     * Try find a solution, if one exists, by changing the given
+     * configuration in place.  Each move is undone before the next one
+     * is tried, so only the one configuration is ever used.  Like solve,
+     * it keeps its own stack: the next move to try at each level.
+     *
+     * @param config A valid configuration
+     * @return true if config now holds a solution, false if there is no
+     * solution (config is then back where it started)
+     */
+    public boolean solveInPlace(MutableConfiguration config) {
+        return solveInPlace(config, new SolveControl());
+    }
+
+    /**
+     * Try find a solution, if one exists, by changing the given
+     * configuration in place, within the limits of a solve handle.
+     *
+     * @param config A valid configuration
+     * @param control the handle: deadline, cancellation and progress
+     * @return true if config now holds a solution, false if there is no
+     * solution or the search was stopped (config is then back where it
+     * started)
+     */
+    public boolean solveInPlace(MutableConfiguration config, SolveControl control) {
+        return searchInPlace(config, 1, control) == 1;
+    }
+
+    /**
+     * Count the solutions for a given configuration by changing it in
+     * place.  No solution is ever copied or kept.
+     *
+     * @param config A valid configuration
+     * @return how many solutions there are
+     */
+    public long countSolutions(MutableConfiguration config) {
+        return searchInPlace(config, Long.MAX_VALUE, new SolveControl());
+    }
+
+    /**
+     * Count the solutions for a given configuration by changing it in
+     * place, stopping once max of them have been found.  This is how to
+     * ask "is the solution unique?" without searching the whole tree.
+     *
+     * @param config A valid configuration
+     * @param max the most solutions to count
+     * @return how many solutions there are, at most max; if it is max,
+     * config is left holding the last one counted
+     */
+    public long countSolutions(MutableConfiguration config, long max) {
+        return searchInPlace(config, max, new SolveControl());
+    }
+
+    /**
+     * Count the solutions for a given configuration by changing it in
+     * place, within the limits of a solve handle.
+     *
      * @param config A valid configuration
-     * @return A solution config, or Optional.empty() if no solution
+     * @param max the most solutions to count
+     * @param control the handle: deadline, cancellation and progress
+     * @return how many solutions were found before max was reached, the
+     * tree ran out, or the search was stopped
      */
-    public Optional<Configuration> solve(Configuration config) {
+    public long countSolutions(MutableConfiguration config, long max, SolveControl control) {
+        return searchInPlace(config, max, control);
+    }
+
+    /**
+     * The in-place search behind solveInPlace and countSolutions.  Goals
+     * are counted and treated as leaves until max of them are found.
+     *
+     * @param config A valid configuration
+     * @param max the most goals to find
+     * @param control the handle: deadline, cancellation and progress
+     * @return how many goals were found; if it is max, config holds the
+     * last one, otherwise config is back where it started
+     */
+    private long searchInPlace(MutableConfiguration config, long max, SolveControl control) {
+        SolverStats stats = new SolverStats();
+        try {
+            return searchInPlace(config, max, control, stats);
+        } finally {
+            control.getStats().merge(stats);
+        }
+    }
+
+    /**
+     * The in-place search, counting into stats of its own.
+     *
+     * @param config A valid configuration
+     * @param max the most goals to find
+     * @param control the handle: deadline, cancellation and progress
+     * @param stats where to count what the search does
+     * @return how many goals were found
+     */
+    private long searchInPlace(MutableConfiguration config, long max, SolveControl control,
+                               SolverStats stats) {
         debugPrint("Current config", config);
+        stats.visit(0);
+        long root = trace(-1, config, SearchTrace.ROOT);
         if (config.isGoal()) {
             debugPrint("\tGoal config", config);
-            return Optional.of(config);
-        } else {
-            for (Configuration child : config.getSuccessors()) {
-                if (child.isValid()) {
-                    debugPrint("\tValid successor", child);
-                    Optional<Configuration> sol = solve(child);
-                    if (sol.isPresent()) {
-                        return sol;
+            return 1;
+        }
+        long found = 0;
+        int[] nextMove = new int[INITIAL_DEPTH];
+        int[] moveCount = new int[INITIAL_DEPTH];
+        // the trace node id of the config at each level
+        long[] ids = new long[INITIAL_DEPTH];
+        ids[0] = root;
+        int depth = 0;
+        int visited = 0;
+        moveCount[0] = config.getMoveCount();
+        if (moveCount[0] == 0) {
+            stats.reject(config);
+        }
+        while (depth >= 0) {
+            if (++visited == SolveControl.CHECK_EVERY) {
+                visited = 0;
+                if (!control.checkIn(SolveControl.CHECK_EVERY, depth)) {
+                    // stopped: take every move back
+                    for (; depth > 0; depth--) {
+                        config.undo();
                     }
-                } else {
-                    debugPrint("\tInvalid successor", child);
+                    return found;
+                }
+            }
+            if (nextMove[depth] == moveCount[depth]) {
+                // backtracking happens here
+                depth--;
+                if (depth >= 0) {
+                    config.undo();
+                }
+                continue;
+            }
+            if (!config.apply(nextMove[depth]++)) {
+                continue;
+            }
+            stats.generated(1);
+            if (config.isValid()) {
+                debugPrint("\tValid successor", config);
+                debugPrint("Current config", config);
+                stats.visit(depth + 1);
+                if (config.isGoal()) {
+                    debugPrint("\tGoal config", config);
+                    trace(ids[depth], config, SearchTrace.GOAL);
+                    if (++found == max) {
+                        return found;
+                    }
+                    config.undo();
+                    continue;
                 }
+                long id = trace(ids[depth], config, SearchTrace.VALID);
+                depth++;
+                if (depth == nextMove.length) {
+                    nextMove = Arrays.copyOf(nextMove, depth * 2);
+                    moveCount = Arrays.copyOf(moveCount, depth * 2);
+                    ids = Arrays.copyOf(ids, depth * 2);
+                }
+                ids[depth] = id;
+                nextMove[depth] = 0;
+                moveCount[depth] = config.getMoveCount();
+                if (moveCount[depth] == 0) {
+                    stats.reject(config);
+                }
+            } else {
+                debugPrint("\tInvalid successor", config);
+                stats.reject(config);
+                trace(ids[depth], config, SearchTrace.INVALID);
+                config.undo();
             }
-            // implicit backtracking happens here
         }
-        return Optional.empty();
+        return found;
     }
 
     /**
@@ -83,26 +324,204 @@ public class Backtracker {
      * If there are none, return null.
      */
     public List<Configuration> solveWithPath(Configuration current) {
-        // redo solve. instead returning solution, return list of configs
-        //base case: list
-        //recursive case: if successful, appends configurations
+        return solveWithPath(current, new SolveControl());
+    }
+
+    /**
+     * Find a goal configuration if it exists, and how to get there,
+     * within the limits of a solve handle.
+     *
+     * @param current the starting configuration
+     * @param control the handle: deadline, cancellation and progress
+     * @return a list of configurations to get to a goal configuration.
+     * If there are none, or the search was stopped, return null.
+     */
+    public List<Configuration> solveWithPath(Configuration current, SolveControl control) {
+        SolverStats stats = new SolverStats();
+        try {
+            return solveWithPath(current, control, stats);
+        } finally {
+            control.getStats().merge(stats);
+        }
+    }
+
+    /**
+     * The search behind solveWithPath, counting into stats of its own.
+     *
+     * @param current the starting configuration
+     * @param control the handle: deadline, cancellation and progress
+     * @param stats where to count what the search does
+     * @return the path to a goal, or null
+     */
+    private List<Configuration> solveWithPath(Configuration current, SolveControl control,
+                                              SolverStats stats) {
+        // same search as solve; the configs on the way down to the one
+        // being looked at are the path
         List<Configuration> path = new LinkedList<>();
+        stats.visit(0);
+        // the trace node id of the config whose successors each frame holds
+        long[] ids = {trace(-1, current, SearchTrace.ROOT)};
         if(current.isGoal())
         {
-         path.add(0, current);
-         return path;
+            path.add(0, current);
+            return path;
         }
-        else
-        {
-            for (Configuration child : current.getSuccessors()) {
+        Deque<Iterator<Configuration>> frames = new ArrayDeque<>(INITIAL_DEPTH);
+        Deque<Configuration> chain = new ArrayDeque<>(INITIAL_DEPTH);
+        frames.push(successors(current, stats));
+        int visited = 0;
+        while (!frames.isEmpty()) {
+            if (++visited == SolveControl.CHECK_EVERY) {
+                visited = 0;
+                if (!control.checkIn(SolveControl.CHECK_EVERY, frames.size())) {
+                    return null;
+                }
+            }
+            Iterator<Configuration> successors = frames.peek();
+            if (!successors.hasNext()) {
+                frames.pop();
+                chain.pollFirst();
+                continue;
+            }
+            Configuration child = successors.next();
+            stats.generated(1);
+            long parent = ids[frames.size() - 1];
+            if (child.isValid()) {
+                debugPrint("\tValid successor", child);
+                stats.visit(frames.size());
+                chain.push(child);
+                if (child.isGoal()) {
+                    trace(parent, child, SearchTrace.GOAL);
+                    // the goal ends the path twice: once as the last
+                    // successor taken, and once as the goal itself
+                    path.addAll(chain);
+                    Collections.reverse(path);
+                    path.add(child);
+                    return path;
+                }
+                if (frames.size() == ids.length) {
+                    ids = Arrays.copyOf(ids, ids.length * 2);
+                }
+                ids[frames.size()] = trace(parent, child, SearchTrace.VALID);
+                frames.push(successors(child, stats));
+            } else {
+                stats.reject(child);
+                trace(parent, child, SearchTrace.INVALID);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The successors of a valid config that isn't a goal, made lazily.
+     * If it has none, it is a dead end and counted as rejected.
+     *
+     * @param config the config
+     * @param stats where to count it
+     * @return an iterator over its successors
+     */
+    private static Iterator<Configuration> successors(Configuration config, SolverStats stats) {
+        Iterator<Configuration> successors = config.successorIterator();
+        if (!successors.hasNext()) {
+            stats.reject(config);
+        }
+        return successors;
+    }
+
+    /**
+     * Walks the search tree one goal at a time.  Each call to hasNext
+     * carries on the search from where the last goal was found.
+     */
+    private class SolutionIterator implements Iterator<Configuration> {
+        /** the successors still to look at on each level of the search */
+        private final Deque<Iterator<Configuration>> frames = new ArrayDeque<>(INITIAL_DEPTH);
+        /** the goal found but not yet handed out */
+        private Configuration next;
+        private final SolveControl control;
+        /** configurations looked at since the last check in */
+        private int visited;
+        /** what the search has done since it last merged into control */
+        private final SolverStats stats = new SolverStats();
+        /** the trace node id of the config whose successors each frame holds */
+        private long[] ids = new long[INITIAL_DEPTH];
+
+        SolutionIterator(Configuration config, SolveControl control) {
+            this.control = control;
+            debugPrint("Current config", config);
+            this.stats.visit(0);
+            this.ids[0] = trace(-1, config, SearchTrace.ROOT);
+            if (config.isGoal()) {
+                debugPrint("\tGoal config", config);
+                this.next = config;
+            } else {
+                this.frames.push(successors(config, this.stats));
+            }
+            control.getStats().merge(this.stats);
+            this.stats.clear();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.next == null) {
+                this.next = advance();
+                this.control.getStats().merge(this.stats);
+                this.stats.clear();
+            }
+            return this.next != null;
+        }
+
+        @Override
+        public Configuration next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Configuration goal = this.next;
+            this.next = null;
+            return goal;
+        }
+
+        /**
+         * Search on to the next goal.
+         *
+         * @return the goal, or null once the whole tree has been searched
+         * or the search was stopped
+         */
+        private Configuration advance() {
+            while (!this.frames.isEmpty()) {
+                if (++this.visited == SolveControl.CHECK_EVERY) {
+                    this.visited = 0;
+                    if (!this.control.checkIn(SolveControl.CHECK_EVERY, this.frames.size())) {
+                        this.frames.clear();
+                        return null;
+                    }
+                }
+                Iterator<Configuration> successors = this.frames.peek();
+                if (!successors.hasNext()) {
+                    // backtracking happens here
+                    this.frames.pop();
+                    continue;
+                }
+                Configuration child = successors.next();
+                this.stats.generated(1);
+                long parent = this.ids[this.frames.size() - 1];
                 if (child.isValid()) {
                     debugPrint("\tValid successor", child);
-                    path = solveWithPath(child);
-                    if(path != null)
-                    {
-                        path.add(0, child);
-                        return path;
+                    debugPrint("Current config", child);
+                    this.stats.visit(this.frames.size());
+                    if (child.isGoal()) {
+                        debugPrint("\tGoal config", child);
+                        trace(parent, child, SearchTrace.GOAL);
+                        return child;
+                    }
+                    if (this.frames.size() == this.ids.length) {
+                        this.ids = Arrays.copyOf(this.ids, this.ids.length * 2);
                     }
+                    this.ids[this.frames.size()] = trace(parent, child, SearchTrace.VALID);
+                    this.frames.push(successors(child, this.stats));
+                } else {
+                    debugPrint("\tInvalid successor", child);
+                    this.stats.reject(child);
+                    trace(parent, child, SearchTrace.INVALID);
                 }
             }
             return null;
@@ -0,0 +1,371 @@
+package lasers.backtracking;
+
+import lasers.model.CorpusWriter;
+import lasers.model.SafeCorpus;
+import lasers.model.SafePuzzle;
+import lasers.model.SolutionWriter;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Solves every safe in a directory, or every file matching a glob, in
+ * one JVM on a fixed pool of worker threads.
+ *
+ * Each safe is solved by the AutoSolver with a time limit of its own.
+ * One line per safe is printed as soon as it is done, so the results
+ * come out in the order the safes finish, as CSV:
+ * <pre>
+ * file,solvable,millis,nodes,solution
+ * tests/4x4safe.txt,true,3,24,*L*0|*XL*|L*1*|1**L
+ * </pre>
+ * or as one JSON object a line:
+ * <pre>
+ * {"file":"tests/4x4safe.txt","solvable":true,"millis":3,"nodes":24,"solution":"*L*0|*XL*|L*1*|1**L"}
+ * </pre>
+ * solvable is true, false, "timeout" if the safe ran out of time, or
+ * "error" if it couldn't be read.  The solution is the rows of the
+ * solved board joined by '|', and empty (null in JSON) if there is none.
+ *
+ * When every safe is done, a summary goes to standard error: how many
+ * of each outcome, how many safes a second, and the percentiles of the
+ * solve times.
+ *
+ * A directory gives its .txt files, leaving out the -input.txt command
+ * scripts of the PTUI.  A glob such as "tests/10x*.txt" matches the
+ * file names in its directory.  A SafeCorpus file (see CorpusWriter)
+ * gives every safe in it, read straight from its mapping; each is named
+ * by the corpus and its index, as in "all.lsc#12".
+ *
+ * If a solutions file is given, what came of each safe is added to it
+ * by a SolutionWriter as well, under the index of the safe in the
+ * corpus or in the sorted list of files.
+ *
+ * Usage: java BatchSolver directory|glob|corpus [csv|json] [threads] [timeout seconds] [solutions file]
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class BatchSolver {
+    /** the default time limit of one safe, in seconds */
+    private static final double DEFAULT_TIMEOUT = 10;
+    /** how many safes may be queued per worker, so a huge batch isn't all in memory at once */
+    private static final int QUEUED_PER_WORKER = 4;
+
+    /**
+     * Where the safe of a job comes from.
+     */
+    private interface Source {
+        /**
+         * @return the safe
+         * @throws IOException if it can't be read
+         */
+        public SafePuzzle load() throws IOException;
+    }
+
+    /**
+     * What came of solving one safe.
+     */
+    private static class Result {
+        private final long index;
+        private final String file;
+        /** "true", "false", "timeout" or "error" */
+        private final String solvable;
+        private final long millis;
+        private final long nodes;
+        /** the solved board, or null */
+        private final String[][] solution;
+
+        Result(long index, String file, String solvable, long millis, long nodes, String[][] solution) {
+            this.index = index;
+            this.file = file;
+            this.solvable = solvable;
+            this.millis = millis;
+            this.nodes = nodes;
+            this.solution = solution;
+        }
+
+        /**
+         * @return the result as a CSV line
+         */
+        String toCsv() {
+            return csv(this.file) + "," + this.solvable + "," + this.millis + "," + this.nodes + "," +
+                    (this.solution == null ? "" : csv(compact(this.solution)));
+        }
+
+        /**
+         * @return the result as a JSON object on one line
+         */
+        String toJson() {
+            boolean known = this.solvable.equals("true") || this.solvable.equals("false");
+            return "{\"file\":" + json(this.file) +
+                    ",\"solvable\":" + (known ? this.solvable : json(this.solvable)) +
+                    ",\"millis\":" + this.millis +
+                    ",\"nodes\":" + this.nodes +
+                    ",\"solution\":" + (this.solution == null ? "null" : json(compact(this.solution))) + "}";
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1 || args.length > 5) {
+            System.out.println("Usage: java BatchSolver directory|glob|corpus [csv|json] [threads] [timeout seconds]" +
+                    " [solutions file]");
+            return;
+        }
+        Path path = Paths.get(args[0]);
+        SafeCorpus corpus = SafeCorpus.isCorpus(path) ? new SafeCorpus(path) : null;
+        List<Path> safes = corpus == null ? findSafes(args[0]) : null;
+        int total = corpus == null ? safes.size() : corpus.size();
+        boolean json = args.length >= 2 && args[1].equals("json");
+        int threads = args.length >= 3 ?
+                Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long timeout = (long) ((args.length >= 4 ? Double.parseDouble(args[3]) : DEFAULT_TIMEOUT) * 1000);
+        SolutionWriter solutions = null;
+        if (args.length == 5) {
+            int[] size = corpus != null ?
+                    new int[]{corpus.getMaxRows(), corpus.getMaxCols()} : CorpusWriter.largest(safes);
+            solutions = new SolutionWriter(Paths.get(args[4]), size[0], size[1]);
+        }
+
+        if (!json) {
+            System.out.println("file,solvable,millis,nodes,solution");
+        }
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CompletionService<Result> done = new ExecutorCompletionService<>(pool);
+        List<Result> results = new ArrayList<>(total);
+        int queued = 0;
+        try {
+            for (int i = 0; i < total; i++) {
+                // wait for a safe to finish before queueing more than the pool can soon take
+                if (queued == threads * QUEUED_PER_WORKER) {
+                    results.add(report(done, json, solutions));
+                    --queued;
+                }
+                int index = i;
+                if (corpus != null) {
+                    done.submit(() -> solve(index, args[0] + "#" + index, () -> corpus.get(index), timeout));
+                } else {
+                    String file = safes.get(index).toString();
+                    done.submit(() -> solve(index, file, () -> SafePuzzle.read(file), timeout));
+                }
+                ++queued;
+            }
+            while (queued > 0) {
+                results.add(report(done, json, solutions));
+                --queued;
+            }
+        } finally {
+            pool.shutdownNow();
+            if (solutions != null) {
+                solutions.close();
+            }
+            if (corpus != null) {
+                corpus.close();
+            }
+        }
+        System.out.flush();
+        System.err.println(summary(results, (System.nanoTime() - start) / 1_000_000L));
+    }
+
+    /**
+     * The safes a batch argument names.
+     *
+     * @param spec a directory, a file, or a glob of file names
+     * @return the safe files, sorted by name
+     * @throws IOException if the directory can't be listed
+     */
+    private static List<Path> findSafes(String spec) throws IOException {
+        Path path = Paths.get(spec);
+        List<Path> safes = new ArrayList<>();
+        if (spec.indexOf('*') >= 0 || spec.indexOf('?') >= 0 || spec.indexOf('[') >= 0) {
+            Path dir = path.getParent() == null ? Paths.get(".") : path.getParent();
+            try (DirectoryStream<Path> files =
+                         Files.newDirectoryStream(dir, path.getFileName().toString())) {
+                for (Path file : files) {
+                    safes.add(file);
+                }
+            }
+        } else if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*.txt")) {
+                for (Path file : files) {
+                    if (!file.getFileName().toString().endsWith("-input.txt")) {
+                        safes.add(file);
+                    }
+                }
+            }
+        } else {
+            safes.add(path);
+        }
+        safes.sort(null);
+        return safes;
+    }
+
+    /**
+     * Solve one safe.  It runs on a worker.
+     *
+     * @param index the index of the safe in the batch
+     * @param name the name of the safe in the results
+     * @param source where to get the safe
+     * @param timeoutMillis how long it may take
+     * @return what came of it
+     */
+    private static Result solve(long index, String name, Source source, long timeoutMillis) {
+        long start = System.nanoTime();
+        SafeConfig init;
+        try {
+            init = new SafeConfig(source.load());
+        } catch (IOException | RuntimeException e) {
+            return new Result(index, name, "error", (System.nanoTime() - start) / 1_000_000L, 0, null);
+        }
+        SolveControl control = new SolveControl(timeoutMillis);
+        Optional<Configuration> sol = new AutoSolver().solve(init, control);
+        long millis = (System.nanoTime() - start) / 1_000_000L;
+        long nodes = control.getStats().getNodes();
+        if (sol.isPresent()) {
+            return new Result(index, name, "true", millis, nodes, ((SafeConfig) sol.get()).getBoard());
+        }
+        return new Result(index, name, control.isStopped() ? "timeout" : "false", millis, nodes, null);
+    }
+
+    /**
+     * Wait for the next safe to finish, print its line and add it to the
+     * solutions file.
+     *
+     * @param done the safes being solved
+     * @param json true for JSON lines, false for CSV
+     * @param solutions the solutions file, or null
+     * @return its result, without the solution, for the summary
+     * @throws InterruptedException if the wait is interrupted
+     * @throws IOException if the solutions file can't be written
+     */
+    private static Result report(CompletionService<Result> done, boolean json, SolutionWriter solutions)
+            throws InterruptedException, IOException {
+        Result result;
+        try {
+            result = done.take().get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("a solve failed", e.getCause());
+        }
+        System.out.println(json ? result.toJson() : result.toCsv());
+        if (solutions != null && !result.solvable.equals("error")) {
+            solutions.add(result.index, result.solution != null ? SolutionWriter.SOLVED :
+                    result.solvable.equals("timeout") ? SolutionWriter.TIMED_OUT : SolutionWriter.NO_SOLUTION,
+                    result.solution);
+        }
+        return new Result(result.index, result.file, result.solvable, result.millis, result.nodes, null);
+    }
+
+    /**
+     * @param board a board
+     * @return its rows, each tile one after the other, joined by '|'
+     */
+    private static String compact(String[][] board) {
+        StringBuilder text = new StringBuilder();
+        for (int r = 0; r < board.length; r++) {
+            if (r > 0) {
+                text.append('|');
+            }
+            for (String tile : board[r]) {
+                text.append(tile);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * The summary of a batch: outcomes, throughput and solve time
+     * percentiles.
+     *
+     * @param results the result of every safe
+     * @param wallMillis how long the whole batch took
+     * @return the summary, a few lines of text
+     */
+    private static String summary(List<Result> results, long wallMillis) {
+        int solved = 0, unsolvable = 0, timeouts = 0, errors = 0;
+        long[] times = new long[results.size()];
+        long nodes = 0;
+        for (int i = 0; i < times.length; i++) {
+            Result result = results.get(i);
+            times[i] = result.millis;
+            nodes += result.nodes;
+            switch (result.solvable) {
+                case "true":
+                    ++solved;
+                    break;
+                case "false":
+                    ++unsolvable;
+                    break;
+                case "timeout":
+                    ++timeouts;
+                    break;
+                default:
+                    ++errors;
+            }
+        }
+        Arrays.sort(times);
+        double seconds = Math.max(wallMillis, 1) / 1000.0;
+        return "Safes: " + times.length + " (" + solved + " solved, " + unsolvable + " no solution, " +
+                timeouts + " timed out, " + errors + " unreadable)\n" +
+                "Elapsed time: " + wallMillis / 1000.0 + " seconds, " +
+                String.format("%.1f safes/s, %.0f nodes/s", times.length / seconds, nodes / seconds) + "\n" +
+                "Solve time (ms): p50 " + percentile(times, 50) + ", p90 " + percentile(times, 90) +
+                ", p99 " + percentile(times, 99) + ", max " + percentile(times, 100);
+    }
+
+    /**
+     * @param sorted some times, smallest first
+     * @param p the percentile, 1 to 100
+     * @return the smallest time at least p percent of them are no more
+     * than, or 0 if there are none
+     */
+    private static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * @param text a CSV field
+     * @return it, quoted if it has to be
+     */
+    private static String csv(String text) {
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0) {
+            return text;
+        }
+        return "\"" + text.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * @param text some text
+     * @return it as a JSON string
+     */
+    private static String json(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < ' ') {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,20 @@
+package lasers.backtracking;
+
+/**
+ * The order a SafeConfig decides its tiles in.  Every order reaches the
+ * same solutions; they differ in how soon a dead end is noticed, and so
+ * in how many configurations the search has to look at.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public enum CellOrder {
+    /** the next tile in row-major order, pillars included */
+    ROW_MAJOR,
+    /** a tile next to the numbered pillar with the least room to spare,
+     * then as FEWEST_LIGHTERS once the pillars are decided */
+    PILLAR_SLACK,
+    /** a tile that can light the dark tile with the fewest undecided
+     * tiles left that could light it */
+    FEWEST_LIGHTERS
+}
@@ -1,6 +1,7 @@
 package lasers.backtracking;
 
 import java.util.Collection;
+import java.util.Iterator;
 
 /**
  * The representation of a single configuration for a puzzle.
@@ -18,6 +19,19 @@ public interface Configuration {
      */
     public Collection< Configuration > getSuccessors();
 
+    /**
+     * Go through the successors from the current one, in the same order
+     * as getSuccessors.  A configuration can make each successor only
+     * when it is asked for, so a search that stops at the first one never
+     * builds the rest.  The current configuration must not change while
+     * the iterator is in use.
+     *
+     * @return an iterator over all successors, valid and invalid
+     */
+    public default Iterator< Configuration > successorIterator() {
+        return getSuccessors().iterator();
+    }
+
     /**
      * Is the current configuration valid or not?
      *
@@ -0,0 +1,651 @@
+package lasers.backtracking;
+
+import lasers.model.LasersModel;
+import lasers.model.SegmentIndex;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * A safe solver that treats the safe as a cover problem and solves it
+ * with Knuth's Algorithm X on dancing links.
+ *
+ * Each option of the matrix is a laser on one non-pillar tile.  The
+ * items it touches are:
+ * - the tiles it lights: every tile of its two line of sight segments.
+ *   Each of these must be covered at least once.
+ * - the two segments themselves: secondary items that can be used at
+ *   most once, which is what stops two lasers seeing each other.
+ * - the numbered pillars next to it: each must be used exactly its
+ *   number of times.
+ *
+ * A tile is lit by exactly the options of its two segments, so the tile
+ * items don't need nodes of their own: their options are read off the
+ * two segment columns, which keeps the matrix as small as the safe.
+ *
+ * At each level the search branches on the item with the fewest options
+ * left, wherever it is on the board, instead of the next tile in
+ * row-major order.  Once an option has been tried for an item it is
+ * hidden for the options after it, so every solution is found exactly
+ * once, which also makes counting them cheap.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class DancingLinksSolver implements Solver<SafeConfig> {
+
+    /**
+     * Try find a solution, if one exists, for a safe.
+     *
+     * @param config the starting config of a safe
+     * @param control the handle: deadline, cancellation and progress
+     * @return A solution config, or Optional.empty() if no solution or
+     * the search was stopped
+     */
+    @Override
+    public Optional<Configuration> solve(SafeConfig config, SolveControl control) {
+        Search search = new Search(config);
+        if (search.run(1, control) == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(config.withLasers(search.solution));
+    }
+
+    /**
+     * Count the solutions of a safe, stopping once max of them have been
+     * found.
+     *
+     * @param config the starting config of a safe
+     * @param max the most solutions to count
+     * @return how many solutions there are, at most max
+     */
+    public long countSolutions(SafeConfig config, long max) {
+        return countSolutions(config, max, new SolveControl());
+    }
+
+    /**
+     * Count the solutions of a safe within the limits of a solve handle.
+     *
+     * @param config the starting config of a safe
+     * @param max the most solutions to count
+     * @param control the handle: deadline, cancellation and progress
+     * @return how many solutions were found before max was reached, the
+     * matrix ran out, or the search was stopped
+     */
+    public long countSolutions(SafeConfig config, long max, SolveControl control) {
+        return new Search(config).run(max, control);
+    }
+
+    /**
+     * The matrix of one safe and the state of the search through it.
+     */
+    private static class Search {
+        /** choose() results that aren't an item */
+        private static final int GOAL = -1;
+        private static final int DEAD = -2;
+
+        private final SegmentIndex segments;
+        private final int cells;
+        /** how many horizontal segment columns come before the vertical ones */
+        private final int hCount;
+        /** the first pillar column */
+        private final int pillarBase;
+
+        /*
+         * The dancing links.  Nodes 0 to columns-1 are the column headers:
+         * the horizontal segments, then the vertical segments, then the
+         * numbered pillars.  The nodes of option o follow, from
+         * optionStart[o] up to optionStart[o + 1].
+         */
+        private final int[] up;
+        private final int[] down;
+        private final int[] column;
+        /** the option each node belongs to */
+        private final int[] owner;
+        /** how many options are still in each column */
+        private final int[] length;
+        private final int[] optionStart;
+        /** the tile of each option, and the option of each tile (-1 for a pillar) */
+        private final int[] optionTile;
+        private final int[] tileOption;
+        private final boolean[] hidden;
+
+        /** the numbered pillars next to each tile */
+        private final int[][] adjacentPillars;
+        /** how many more lasers each numbered pillar needs */
+        private final int[] need;
+        /** how many chosen lasers light each tile */
+        private final int[] covered;
+
+        /*
+         * The primary items still to satisfy, as a circular list: tiles
+         * are items 0 to cells-1, the numbered pillars follow, and the
+         * header is the last.
+         */
+        private final int[] left;
+        private final int[] right;
+        private final int head;
+
+        /** every change made, so it can be taken back: option << 1 | SELECT or HIDE */
+        private int[] trail = new int[64];
+        private int trailSize;
+        private static final int HIDE = 0;
+        private static final int SELECT = 1;
+
+        /** the lasers of the first solution found */
+        private int[] solution;
+
+        /** false if the safe can't be solved whatever is chosen */
+        private boolean possible = true;
+
+        Search(SafeConfig config) {
+            this.segments = config.getSegments();
+            String[][] board = config.getBoard();
+            int cols = this.segments.getCols();
+            this.cells = this.segments.getRows() * cols;
+            this.hCount = this.segments.getHorizontalCount();
+            this.pillarBase = this.hCount + this.segments.getVerticalCount();
+
+            // number the numbered pillars
+            int[] pillarId = new int[this.cells];
+            int[] needs = new int[this.cells];
+            int pillarCount = 0;
+            for (int i = 0; i < this.cells; i++) {
+                String tile = board[i / cols][i % cols];
+                if (this.segments.isPillar(i) && !tile.equals(LasersModel.FREE_PILLAR)) {
+                    needs[pillarCount] = tile.charAt(0) - '0';
+                    pillarId[i] = pillarCount++;
+                } else {
+                    pillarId[i] = -1;
+                }
+            }
+            this.need = Arrays.copyOf(needs, pillarCount);
+
+            // one option per non-pillar tile
+            this.adjacentPillars = new int[this.cells][];
+            this.tileOption = new int[this.cells];
+            int[] tiles = new int[this.cells];
+            int options = 0;
+            int nodes = this.pillarBase + pillarCount;
+            int[] around = new int[4];
+            for (int i = 0; i < this.cells; i++) {
+                int row = i / cols;
+                int col = i % cols;
+                int n = 0;
+                if (row > 0 && pillarId[i - cols] >= 0) {
+                    around[n++] = pillarId[i - cols];
+                }
+                if (i + cols < this.cells && pillarId[i + cols] >= 0) {
+                    around[n++] = pillarId[i + cols];
+                }
+                if (col > 0 && pillarId[i - 1] >= 0) {
+                    around[n++] = pillarId[i - 1];
+                }
+                if (col < cols - 1 && pillarId[i + 1] >= 0) {
+                    around[n++] = pillarId[i + 1];
+                }
+                this.adjacentPillars[i] = Arrays.copyOf(around, n);
+                if (this.segments.isPillar(i)) {
+                    this.tileOption[i] = -1;
+                } else {
+                    this.tileOption[i] = options;
+                    tiles[options++] = i;
+                    nodes += 2 + n;
+                }
+            }
+            this.optionTile = Arrays.copyOf(tiles, options);
+            this.optionStart = new int[options + 1];
+            this.hidden = new boolean[options];
+
+            // the headers, then each option's nodes at the bottom of its columns
+            this.up = new int[nodes];
+            this.down = new int[nodes];
+            this.column = new int[nodes];
+            this.owner = new int[nodes];
+            this.length = new int[this.pillarBase + pillarCount];
+            for (int c = 0; c < this.length.length; c++) {
+                this.up[c] = c;
+                this.down[c] = c;
+                this.column[c] = c;
+            }
+            int x = this.length.length;
+            for (int o = 0; o < options; o++) {
+                int tile = this.optionTile[o];
+                this.optionStart[o] = x;
+                Arrays.fill(this.owner, x, x + 2 + this.adjacentPillars[tile].length, o);
+                append(x++, this.segments.getHorizontal(tile));
+                append(x++, this.hCount + this.segments.getVertical(tile));
+                for (int p : this.adjacentPillars[tile]) {
+                    append(x++, this.pillarBase + p);
+                }
+            }
+            this.optionStart[options] = x;
+
+            // the primary items: every non-pillar tile, and the pillars that
+            // still need a laser
+            this.head = this.cells + pillarCount;
+            this.left = new int[this.head + 1];
+            this.right = new int[this.head + 1];
+            this.left[this.head] = this.head;
+            this.right[this.head] = this.head;
+            for (int i = 0; i < this.cells; i++) {
+                if (!this.segments.isPillar(i)) {
+                    appendItem(i);
+                }
+            }
+            for (int p = 0; p < pillarCount; p++) {
+                if (this.need[p] > 0) {
+                    appendItem(this.cells + p);
+                } else {
+                    hideColumn(this.pillarBase + p);
+                }
+            }
+            this.covered = new int[this.cells];
+
+            // the lasers already in the safe are chosen up front
+            for (int i = 0; i < this.cells; i++) {
+                if (board[i / cols][i % cols].equals(LasersModel.LASER)) {
+                    int o = this.tileOption[i];
+                    if (this.hidden[o]) {
+                        this.possible = false;
+                        return;
+                    }
+                    select(o);
+                }
+            }
+        }
+
+        /**
+         * Search the matrix.
+         *
+         * @param max the most solutions to find
+         * @param control the handle: deadline, cancellation and progress
+         * @return how many solutions were found, at most max
+         */
+        long run(long max, SolveControl control) {
+            SolverStats stats = new SolverStats();
+            try {
+                return run(max, control, stats);
+            } finally {
+                control.getStats().merge(stats);
+            }
+        }
+
+        /**
+         * Search the matrix, counting each option selected as a
+         * successor and each one that leaves a live matrix as a node.
+         *
+         * @param max the most solutions to find
+         * @param control the handle: deadline, cancellation and progress
+         * @param stats where to count what the search does
+         * @return how many solutions were found, at most max
+         */
+        private long run(long max, SolveControl control, SolverStats stats) {
+            if (!this.possible) {
+                return 0;
+            }
+            stats.visit(0);
+            int first = choose();
+            if (first == GOAL) {
+                record();
+                return 1;
+            } else if (first == DEAD) {
+                return 0;
+            }
+
+            // each level of the search holds the options to try for its
+            // item, from branches[branchStart] up to branches[branchEnd]
+            int[] branches = new int[64];
+            int branchTop = 0;
+            int[] branchStart = new int[64];
+            int[] branchPos = new int[64];
+            int[] branchEnd = new int[64];
+            // the trail before each level, and before its current option
+            int[] base = new int[64];
+            int[] mark = new int[64];
+            int[] tried = new int[64];
+
+            long found = 0;
+            int depth = 0;
+            int item = first;
+            boolean enter = true;
+            int visited = 0;
+            while (depth >= 0) {
+                if (++visited == SolveControl.CHECK_EVERY) {
+                    visited = 0;
+                    if (!control.checkIn(SolveControl.CHECK_EVERY, depth)) {
+                        return found;
+                    }
+                }
+                if (enter) {
+                    if (depth == base.length) {
+                        int size = depth * 2;
+                        branchStart = Arrays.copyOf(branchStart, size);
+                        branchPos = Arrays.copyOf(branchPos, size);
+                        branchEnd = Arrays.copyOf(branchEnd, size);
+                        base = Arrays.copyOf(base, size);
+                        mark = Arrays.copyOf(mark, size);
+                        tried = Arrays.copyOf(tried, size);
+                    }
+                    int needed = branchTop + this.optionTile.length;
+                    if (needed > branches.length) {
+                        branches = Arrays.copyOf(branches, Math.max(needed, branches.length * 2));
+                    }
+                    base[depth] = this.trailSize;
+                    branchStart[depth] = branchTop;
+                    branchTop = gather(item, branches, branchTop);
+                    branchPos[depth] = branchStart[depth];
+                    branchEnd[depth] = branchTop;
+                    tried[depth] = -1;
+                    enter = false;
+                }
+
+                // take back the last option tried here, and keep it out of
+                // the ones after it
+                if (tried[depth] >= 0) {
+                    undoTo(mark[depth]);
+                    hide(tried[depth]);
+                    tried[depth] = -1;
+                }
+                while (branchPos[depth] < branchEnd[depth] && this.hidden[branches[branchPos[depth]]]) {
+                    branchPos[depth]++;
+                }
+                if (branchPos[depth] == branchEnd[depth]) {
+                    // backtracking happens here
+                    undoTo(base[depth]);
+                    branchTop = branchStart[depth];
+                    depth--;
+                    continue;
+                }
+
+                int o = branches[branchPos[depth]++];
+                mark[depth] = this.trailSize;
+                select(o);
+                tried[depth] = o;
+                stats.generated(1);
+                item = choose();
+                if (item != DEAD) {
+                    stats.visit(depth + 1);
+                }
+                if (item == GOAL) {
+                    if (found == 0) {
+                        record();
+                    }
+                    if (++found == max) {
+                        return found;
+                    }
+                } else if (item != DEAD) {
+                    depth++;
+                    enter = true;
+                }
+            }
+            return found;
+        }
+
+        /**
+         * The primary item with the fewest options left.
+         *
+         * @return the item, GOAL if every item is satisfied, or DEAD if
+         * some item can no longer be satisfied
+         */
+        private int choose() {
+            int best = GOAL;
+            int fewest = Integer.MAX_VALUE;
+            for (int item = this.right[this.head]; item != this.head; item = this.right[item]) {
+                int options;
+                if (item < this.cells) {
+                    options = this.length[this.segments.getHorizontal(item)] +
+                            this.length[this.hCount + this.segments.getVertical(item)];
+                    if (!this.hidden[this.tileOption[item]]) {
+                        // its own option is in both of its segment columns
+                        options--;
+                    }
+                    if (options == 0) {
+                        return DEAD;
+                    }
+                } else {
+                    int p = item - this.cells;
+                    options = this.length[this.pillarBase + p];
+                    if (options < this.need[p]) {
+                        return DEAD;
+                    }
+                }
+                if (options < fewest) {
+                    fewest = options;
+                    best = item;
+                    if (options == 1) {
+                        break;
+                    }
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Copy the options of an item onto the branch stack.
+         *
+         * @param item a primary item
+         * @param branches the branch stack
+         * @param top where its free space starts
+         * @return the new top
+         */
+        private int gather(int item, int[] branches, int top) {
+            if (item < this.cells) {
+                int own = this.tileOption[item];
+                int h = this.segments.getHorizontal(item);
+                for (int x = this.down[h]; x != h; x = this.down[x]) {
+                    branches[top++] = this.owner[x];
+                }
+                int v = this.hCount + this.segments.getVertical(item);
+                for (int x = this.down[v]; x != v; x = this.down[x]) {
+                    if (this.owner[x] != own) {
+                        branches[top++] = this.owner[x];
+                    }
+                }
+            } else {
+                int c = this.pillarBase + item - this.cells;
+                for (int x = this.down[c]; x != c; x = this.down[x]) {
+                    branches[top++] = this.owner[x];
+                }
+            }
+            return top;
+        }
+
+        /**
+         * Choose an option: light its tiles, count it against its pillars,
+         * and hide every option it rules out.
+         *
+         * @param o the option
+         */
+        private void select(int o) {
+            push(o << 1 | SELECT);
+            int tile = this.optionTile[o];
+            int h = this.segments.getHorizontal(tile);
+            int v = this.segments.getVertical(tile);
+            int cols = this.segments.getCols();
+            for (int i = this.segments.getHorizontalStart(h); i <= this.segments.getHorizontalEnd(h); i++) {
+                cover(i);
+            }
+            for (int i = this.segments.getVerticalStart(v); i <= this.segments.getVerticalEnd(v); i += cols) {
+                if (i != tile) {
+                    cover(i);
+                }
+            }
+            for (int p : this.adjacentPillars[tile]) {
+                if (--this.need[p] == 0) {
+                    unlink(this.cells + p);
+                }
+            }
+            hideColumn(h);
+            hideColumn(this.hCount + v);
+            for (int p : this.adjacentPillars[tile]) {
+                if (this.need[p] == 0) {
+                    hideColumn(this.pillarBase + p);
+                }
+            }
+        }
+
+        /**
+         * Take back select, in exactly the reverse order.
+         *
+         * @param o the option
+         */
+        private void unselect(int o) {
+            int tile = this.optionTile[o];
+            int h = this.segments.getHorizontal(tile);
+            int v = this.segments.getVertical(tile);
+            int cols = this.segments.getCols();
+            int[] around = this.adjacentPillars[tile];
+            for (int k = around.length - 1; k >= 0; k--) {
+                int p = around[k];
+                if (this.need[p]++ == 0) {
+                    link(this.cells + p);
+                }
+            }
+            for (int i = this.segments.getVerticalEnd(v); i >= this.segments.getVerticalStart(v); i -= cols) {
+                if (i != tile) {
+                    uncover(i);
+                }
+            }
+            for (int i = this.segments.getHorizontalEnd(h); i >= this.segments.getHorizontalStart(h); i--) {
+                uncover(i);
+            }
+        }
+
+        /**
+         * a chosen laser lights a tile
+         * @param i the tile
+         */
+        private void cover(int i) {
+            if (this.covered[i]++ == 0) {
+                unlink(i);
+            }
+        }
+
+        /**
+         * a chosen laser no longer lights a tile
+         * @param i the tile
+         */
+        private void uncover(int i) {
+            if (--this.covered[i] == 0) {
+                link(i);
+            }
+        }
+
+        /**
+         * hide every option still in a column
+         * @param c the column
+         */
+        private void hideColumn(int c) {
+            while (this.down[c] != c) {
+                hide(this.owner[this.down[c]]);
+            }
+        }
+
+        /**
+         * take an option out of all its columns
+         * @param o the option
+         */
+        private void hide(int o) {
+            push(o << 1 | HIDE);
+            this.hidden[o] = true;
+            for (int x = this.optionStart[o]; x < this.optionStart[o + 1]; x++) {
+                this.down[this.up[x]] = this.down[x];
+                this.up[this.down[x]] = this.up[x];
+                this.length[this.column[x]]--;
+            }
+        }
+
+        /**
+         * put a hidden option back where it was: the dancing links
+         * @param o the option
+         */
+        private void unhide(int o) {
+            for (int x = this.optionStart[o + 1] - 1; x >= this.optionStart[o]; x--) {
+                this.down[this.up[x]] = x;
+                this.up[this.down[x]] = x;
+                this.length[this.column[x]]++;
+            }
+            this.hidden[o] = false;
+        }
+
+        /**
+         * take back every change made since the trail was this long
+         * @param size the old length of the trail
+         */
+        private void undoTo(int size) {
+            while (this.trailSize > size) {
+                int entry = this.trail[--this.trailSize];
+                if ((entry & 1) == SELECT) {
+                    unselect(entry >>> 1);
+                } else {
+                    unhide(entry >>> 1);
+                }
+            }
+        }
+
+        /**
+         * keep the lasers of the current solution
+         */
+        private void record() {
+            int[] lasers = new int[this.trailSize];
+            int n = 0;
+            for (int k = 0; k < this.trailSize; k++) {
+                if ((this.trail[k] & 1) == SELECT) {
+                    lasers[n++] = this.optionTile[this.trail[k] >>> 1];
+                }
+            }
+            this.solution = Arrays.copyOf(lasers, n);
+        }
+
+        /**
+         * add a node to the bottom of a column
+         * @param x the node
+         * @param c the column
+         */
+        private void append(int x, int c) {
+            this.column[x] = c;
+            this.up[x] = this.up[c];
+            this.down[x] = c;
+            this.down[this.up[c]] = x;
+            this.up[c] = x;
+            this.length[c]++;
+        }
+
+        /**
+         * add an item to the end of the primary list
+         * @param item the item
+         */
+        private void appendItem(int item) {
+            this.left[item] = this.left[this.head];
+            this.right[item] = this.head;
+            this.right[this.left[this.head]] = item;
+            this.left[this.head] = item;
+        }
+
+        /**
+         * put an unlinked item back between its old neighbours
+         * @param item the item
+         */
+        private void link(int item) {
+            this.right[this.left[item]] = item;
+            this.left[this.right[item]] = item;
+        }
+
+        /**
+         * take an item out of the primary list; it keeps its own links
+         * @param item the item
+         */
+        private void unlink(int item) {
+            this.right[this.left[item]] = this.right[item];
+            this.left[this.right[item]] = this.left[item];
+        }
+
+        private void push(int entry) {
+            if (this.trailSize == this.trail.length) {
+                this.trail = Arrays.copyOf(this.trail, this.trailSize * 2);
+            }
+            this.trail[this.trailSize++] = entry;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package lasers.backtracking;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The path to a solution of a safe, kept as the decisions that lead
+ * there instead of a board for every step.
+ *
+ * Each decision is one int: the row-major index of the tile decided,
+ * shifted left a bit, plus 1 if a laser was put on it.  A board along
+ * the way is rebuilt when it is asked for, by replaying the decisions
+ * on a copy of the starting config, so the whole path takes memory in
+ * proportion to the number of tiles rather than its square.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class DecisionPath {
+    /** the config the decisions start from */
+    private final SafeConfig start;
+    private final int[] decisions;
+
+    /**
+     * A path of decisions from a starting config.
+     *
+     * @param start the config the decisions start from
+     * @param decisions the decisions, oldest first
+     */
+    private DecisionPath(SafeConfig start, int[] decisions) {
+        this.start = start;
+        this.decisions = decisions;
+    }
+
+    /**
+     * Find a solution of a safe, if it exists, and how to get there.
+     * The search runs in place on one copy of the start, so it never
+     * holds more than that one board.
+     *
+     * @param bt the backtracker to search with
+     * @param start the starting config
+     * @param control the handle: deadline, cancellation and progress
+     * @return the path to the first solution the search reaches, or null
+     * if there is none or the search was stopped
+     */
+    public static DecisionPath solve(Backtracker bt, SafeConfig start, SolveControl control) {
+        SafeConfig config = start.copy();
+        if (!bt.solveInPlace(config, control)) {
+            return null;
+        }
+        return new DecisionPath(start.copy(), config.getDecisions());
+    }
+
+    /**
+     * @return how many decisions there are
+     */
+    public int size() {
+        return this.decisions.length;
+    }
+
+    /**
+     * @param step a decision, from 0
+     * @return the row-major index of the tile it decided
+     */
+    public int getTile(int step) {
+        return this.decisions[step] >> 1;
+    }
+
+    /**
+     * @param step a decision, from 0
+     * @return true if it put a laser on its tile
+     */
+    public boolean isLaser(int step) {
+        return (this.decisions[step] & 1) == 1;
+    }
+
+    /**
+     * Rebuild the board after some of the decisions.
+     *
+     * @param steps how many decisions to replay, from 0 up to size()
+     * @return a new config for that board
+     */
+    public SafeConfig board(int steps) {
+        SafeConfig config = this.start.copy();
+        for (int i = 0; i < steps; i++) {
+            replay(config, i);
+        }
+        return config;
+    }
+
+    /**
+     * Walk the boards along the path, one decision at a time, from the
+     * board after the first decision to the solution (or just the start,
+     * if it needs no decisions).  The same config is changed in place
+     * and handed out each time, so use board to keep one.
+     *
+     * @return an iterator over the boards
+     */
+    public Iterator<SafeConfig> boards() {
+        return new Iterator<SafeConfig>() {
+            private final SafeConfig config = DecisionPath.this.start.copy();
+            private int step = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.step < Math.max(1, size());
+            }
+
+            @Override
+            public SafeConfig next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (size() > 0) {
+                    replay(this.config, this.step);
+                }
+                this.step++;
+                return this.config;
+            }
+        };
+    }
+
+    /**
+     * Make one decision of the path on a config.
+     *
+     * @param config the config after the decisions before it
+     * @param step the decision
+     */
+    void replay(SafeConfig config, int step) {
+        if (!config.apply(isLaser(step) ? 0 : 1) || config.getCursor() != getTile(step)) {
+            throw new IllegalStateException("decision " + step + " can't be replayed");
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package lasers.backtracking;
+
+/**
+ * A configuration that the Backtracker changes in place instead of
+ * copying.  Moves are applied to the one board on the way down the
+ * search and undone again on the way back up, so no new configurations
+ * are made while solving.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public interface MutableConfiguration {
+    /**
+     * How many moves can be tried from the current configuration.
+     *
+     * @return the number of moves, 0 if there is nothing left to decide
+     */
+    public int getMoveCount();
+
+    /**
+     * Make a move on the current configuration.
+     *
+     * @param move which move to make, from 0 to getMoveCount() - 1
+     * @return true if the move was made; false if it is not possible
+     * here, in which case nothing changed
+     */
+    public boolean apply(int move);
+
+    /**
+     * Take back the last move that was made.
+     */
+    public void undo();
+
+    /**
+     * Is the current configuration valid or not?
+     *
+     * @return true if valid; false otherwise
+     */
+    public boolean isValid();
+
+    /**
+     * Is the current configuration a goal?
+     * @return true if goal; false otherwise
+     */
+    public boolean isGoal();
+}
@@ -0,0 +1,188 @@
+package lasers.backtracking;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A backtracker that searches on every core of a ForkJoinPool.
+ *
+ * The search tree is split at branching configurations near the top:
+ * all but the first valid successor are forked off as tasks that idle
+ * workers can steal, and the first is searched by the current worker.
+ * Splitting stops once enough branches have been taken, or while the
+ * worker already has spare queued tasks, so deep in the tree each task
+ * is a plain sequential search on its own stack.  As soon as any worker
+ * finds a goal, every other worker sees it at its next configuration and
+ * stops.
+ *
+ * Which solution is returned may differ from Backtracker.solve when a
+ * puzzle has more than one, but whether there is a solution never does.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class ParallelBacktracker implements Solver<Configuration> {
+    /** branching configurations deeper than this are never split */
+    private static final int MAX_SPLIT_DEPTH = 24;
+    /** a worker with this many of its own tasks still queued stops splitting */
+    private static final int MAX_SURPLUS = 3;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Initialize a parallel backtracker on the common pool.
+     */
+    public ParallelBacktracker() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Initialize a parallel backtracker.
+     *
+     * @param pool the pool the search runs on
+     */
+    public ParallelBacktracker(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Try find a solution, if one exists, for a given configuration.
+     *
+     * @param config A valid configuration
+     * @param control the handle: deadline, cancellation and progress
+     * @return A solution config, or Optional.empty() if no solution or
+     * the search was stopped
+     */
+    @Override
+    public Optional<Configuration> solve(Configuration config, SolveControl control) {
+        AtomicReference<Configuration> found = new AtomicReference<>();
+        this.pool.invoke(new SearchTask(config, 0, 0, found, control));
+        return Optional.ofNullable(found.get());
+    }
+
+    /**
+     * Searches the tree below one configuration, forking off parts of it
+     * while there are idle workers to take them.
+     */
+    private static class SearchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Configuration config;
+        /** how many branching configurations are above this one */
+        private final int depth;
+        /** how many moves this one is below the start */
+        private final int level;
+        /** the first goal found by any task of this solve */
+        private final AtomicReference<Configuration> found;
+        private final SolveControl control;
+        /** configurations looked at since the last check in */
+        private int visited;
+        private boolean stopped;
+        /** what this task has done, merged into control once it is done */
+        private final SolverStats stats = new SolverStats();
+
+        SearchTask(Configuration config, int depth, int level,
+                   AtomicReference<Configuration> found, SolveControl control) {
+            this.config = config;
+            this.depth = depth;
+            this.level = level;
+            this.found = found;
+            this.control = control;
+        }
+
+        @Override
+        protected void compute() {
+            // a depth first search on its own stack, stopping once any
+            // task has found a goal or the solve has been stopped
+            Deque<Frame> frames = new ArrayDeque<>();
+            this.stats.visit(this.level);
+            visit(this.config, this.depth, frames);
+            while (!frames.isEmpty()) {
+                Frame top = frames.peek();
+                if (top.successors.hasNext() && this.found.get() == null && !this.stopped) {
+                    this.stats.visit(this.level + frames.size());
+                    visit(top.successors.next(), top.depth, frames);
+                } else {
+                    // the first branch is done, so wait for the forked ones
+                    frames.pop();
+                    for (int i = top.forked.size() - 1; i >= 0; i--) {
+                        top.forked.get(i).join();
+                    }
+                }
+            }
+            this.control.getStats().merge(this.stats);
+        }
+
+        /**
+         * Looks at one valid configuration: records it if it is a goal,
+         * otherwise pushes its valid successors, forking the later ones
+         * off as tasks while there are idle workers to take them.
+         *
+         * @param config the configuration
+         * @param depth how many branching configurations are above it
+         * @param frames the search stack of this task
+         */
+        private void visit(Configuration config, int depth, Deque<Frame> frames) {
+            if (++this.visited == SolveControl.CHECK_EVERY) {
+                this.visited = 0;
+                this.stopped = !this.control.checkIn(SolveControl.CHECK_EVERY, frames.size());
+            }
+            if (config.isGoal()) {
+                this.found.compareAndSet(null, config);
+                return;
+            }
+            List<Configuration> valid = new ArrayList<>(2);
+            Iterator<Configuration> successors = config.successorIterator();
+            if (!successors.hasNext()) {
+                this.stats.reject(config);
+            }
+            while (successors.hasNext()) {
+                Configuration child = successors.next();
+                this.stats.generated(1);
+                if (child.isValid()) {
+                    valid.add(child);
+                } else {
+                    this.stats.reject(child);
+                }
+            }
+            if (valid.size() > 1 && depth < MAX_SPLIT_DEPTH &&
+                    getSurplusQueuedTaskCount() < MAX_SURPLUS) {
+                List<SearchTask> forked = new ArrayList<>(valid.size() - 1);
+                for (int i = 1; i < valid.size(); i++) {
+                    SearchTask task = new SearchTask(valid.get(i), depth + 1,
+                            this.level + frames.size() + 1, this.found, this.control);
+                    task.fork();
+                    forked.add(task);
+                }
+                frames.push(new Frame(valid.subList(0, 1).iterator(), depth + 1, forked));
+            } else {
+                frames.push(new Frame(valid.iterator(), valid.size() > 1 ? depth + 1 : depth,
+                        Collections.emptyList()));
+            }
+        }
+    }
+
+    /**
+     * One level of a task's search stack: the valid successors still to
+     * look at, how many branching configurations are above them, and the
+     * tasks forked off at this level.
+     */
+    private static class Frame {
+        private final Iterator<Configuration> successors;
+        private final int depth;
+        private final List<SearchTask> forked;
+
+        Frame(Iterator<Configuration> successors, int depth, List<SearchTask> forked) {
+            this.successors = successors;
+            this.depth = depth;
+            this.forked = forked;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package lasers.backtracking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+
+/**
+ * Writes a DecisionPath to a channel through one buffer, in one of three
+ * formats.
+ *
+ * FULL is the board after every step, as SafeSolverPath has always
+ * printed it, lines ending in the platform's line separator:
+ * <pre>
+ * Step 0:
+ * (board)
+ * </pre>
+ * and so on, with the goal shown twice at the end.  The starting board
+ * isn't shown, so "Step 0" is the board after the first decision.
+ *
+ * DELTA is the starting board once, then a line per step, numbered as
+ * in FULL so that "step 37" is the decision that made FULL's "Step 37":
+ * <pre>
+ * Start:
+ * (board)
+ * step 37: L at (2,5), beams +6
+ * step 38: . at (2,6)
+ * </pre>
+ * where beams counts the dark tiles the new laser lights.
+ *
+ * BINARY is the same as DELTA for a program to read.  Numbers are big
+ * endian:
+ * <pre>
+ * 4 bytes  "LSRP"
+ * int      rows
+ * int      cols
+ * byte     the starting tiles, rows * cols of them in row-major order,
+ *          each the first character of the tile ('.', 'L', 'X', '0'...)
+ * int      steps
+ * then for each step:
+ * int      the decision: tile index &lt;&lt; 1, plus 1 for a laser
+ * short    the dark tiles a new laser lights, 0 if there is none
+ * </pre>
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class PathWriter {
+    /**
+     * How a path is written.
+     */
+    public enum Format {
+        FULL, DELTA, BINARY
+    }
+
+    /** the first bytes of the binary format */
+    public static final byte[] MAGIC = {'L', 'S', 'R', 'P'};
+    /** what ends a line of FULL, as println ends it */
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final WritableByteChannel out;
+    private final Format format;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+    /**
+     * A writer of paths.
+     *
+     * @param out where to write; it is not closed
+     * @param format how to write
+     */
+    public PathWriter(WritableByteChannel out, Format format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    /**
+     * Write a path, and flush it all to the channel.
+     *
+     * @param path the path
+     * @throws IOException if the channel can't be written
+     */
+    public void write(DecisionPath path) throws IOException {
+        if (this.format == Format.FULL) {
+            writeFull(path);
+        } else {
+            writeSteps(path, this.format == Format.BINARY);
+        }
+        drain();
+    }
+
+    /**
+     * Every board along the path.
+     *
+     * @param path the path
+     * @throws IOException if the channel can't be written
+     */
+    private void writeFull(DecisionPath path) throws IOException {
+        int step = 0;
+        Iterator<SafeConfig> boards = path.boards();
+        String board = null;
+        while (boards.hasNext()) {
+            board = boards.next().toString();
+            put("Step " + step + ":" + NEWLINE);
+            put(board);
+            put(NEWLINE);
+            ++step;
+        }
+        if (path.size() > 0) {
+            // the goal ends the path twice, as it always has
+            put("Step " + step + ":" + NEWLINE);
+            put(board);
+            put(NEWLINE);
+        }
+    }
+
+    /**
+     * The starting board, then what each step changed.
+     *
+     * @param path the path
+     * @param binary true for the binary format, false for text
+     * @throws IOException if the channel can't be written
+     */
+    private void writeSteps(DecisionPath path, boolean binary) throws IOException {
+        SafeConfig config = path.board(0);
+        String[][] board = config.getBoard();
+        int cols = board[0].length;
+        if (binary) {
+            room(12);
+            this.buffer.put(MAGIC);
+            this.buffer.putInt(board.length);
+            this.buffer.putInt(cols);
+            for (String[] row : board) {
+                for (String tile : row) {
+                    room(1);
+                    this.buffer.put((byte) tile.charAt(0));
+                }
+            }
+            room(4);
+            this.buffer.putInt(path.size());
+        } else {
+            put("Start:\n");
+            put(config.toString());
+            put("\n");
+        }
+        for (int step = 0; step < path.size(); step++) {
+            int tile = path.getTile(step);
+            int beams = path.isLaser(step) ? config.darkInSight(tile) : 0;
+            path.replay(config, step);
+            if (binary) {
+                room(6);
+                this.buffer.putInt(tile << 1 | (path.isLaser(step) ? 1 : 0));
+                this.buffer.putShort((short) beams);
+            } else if (path.isLaser(step)) {
+                put("step " + step + ": L at (" + tile / cols + "," + tile % cols +
+                        "), beams +" + beams + "\n");
+            } else {
+                put("step " + step + ": . at (" + tile / cols + "," + tile % cols + ")\n");
+            }
+        }
+    }
+
+    /**
+     * Put text in the buffer, draining it as it fills.
+     *
+     * @param text ASCII text
+     * @throws IOException if the channel can't be written
+     */
+    private void put(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            if (!this.buffer.hasRemaining()) {
+                drain();
+            }
+            this.buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    /**
+     * Make sure the buffer has room, draining it if not.
+     *
+     * @param bytes how many bytes are about to be put
+     * @throws IOException if the channel can't be written
+     */
+    private void room(int bytes) throws IOException {
+        if (this.buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    /**
+     * Write out everything in the buffer.
+     *
+     * @throws IOException if the channel can't be written
+     */
+    private void drain() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.out.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+}
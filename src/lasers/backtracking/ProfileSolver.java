@@ -0,0 +1,480 @@
+package lasers.backtracking;
+
+import lasers.model.LasersModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A safe solver for narrow safes, by dynamic programming over a broken
+ * profile.
+ *
+ * The safe is swept one tile at a time in row-major order along its
+ * long side (it is transposed first if it is wider than it is tall).
+ * Everything the undecided tiles need to know about the decided ones
+ * fits in a small profile along the frontier:
+ * - for each column, whether its current vertical segment already has a
+ *   laser (and whether it is the tile just above), still has a dark tile
+ *   that needs a laser below it, or is free; and, below a numbered
+ *   pillar, whether the tile under it must or must not take a laser.
+ * - for the current horizontal segment, whether it has a laser and which
+ *   of its tiles are still dark.
+ * - whether the tile just to the left is a laser, and how many lasers a
+ *   numbered pillar just to the left still needs.
+ * Configurations with the same profile finish the same way, so they are
+ * merged and only counted.  The work is linear in the long side, and
+ * depends only on how many profiles the short side allows.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class ProfileSolver implements Solver<SafeConfig> {
+    /** the widest short side whose profile still fits in a long */
+    public static final int MAX_WIDTH = 14;
+
+    /**
+     * Can this solver take the safe?
+     *
+     * @param config a config of the safe
+     * @return true if the short side of the safe is at most MAX_WIDTH
+     */
+    public static boolean fits(SafeConfig config) {
+        return Math.min(config.getSegments().getRows(), config.getSegments().getCols()) <= MAX_WIDTH;
+    }
+
+    /**
+     * Try find a solution, if one exists, for a safe.
+     *
+     * @param config the starting config of a safe no wider than MAX_WIDTH
+     * @param control the handle: deadline, cancellation and progress
+     * @return A solution config, or Optional.empty() if no solution or
+     * the sweep was stopped
+     */
+    @Override
+    public Optional<Configuration> solve(SafeConfig config, SolveControl control) {
+        Sweep sweep = new Sweep(config, true);
+        if (sweep.run(control) == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(config.withLasers(sweep.solution()));
+    }
+
+    /**
+     * Count the solutions of a safe.
+     *
+     * @param config the starting config of a safe no wider than MAX_WIDTH
+     * @return how many solutions there are, or Long.MAX_VALUE if there
+     * are at least that many
+     */
+    public long countSolutions(SafeConfig config) {
+        return countSolutions(config, new SolveControl());
+    }
+
+    /**
+     * Count the solutions of a safe within the limits of a solve handle.
+     *
+     * @param config the starting config of a safe no wider than MAX_WIDTH
+     * @param control the handle: deadline, cancellation and progress
+     * @return how many solutions there are, or 0 if the sweep was stopped
+     */
+    public long countSolutions(SafeConfig config, SolveControl control) {
+        return new Sweep(config, false).run(control);
+    }
+
+    /**
+     * One sweep down a safe.
+     */
+    private static class Sweep {
+        /** what a tile is, besides a numbered pillar's number */
+        private static final int EMPTY = -1;
+        private static final int LASER = -2;
+        private static final int FREE_PILLAR = -3;
+
+        /*
+         * The state of a column, for the tile below the frontier.
+         */
+        /** nothing above in its vertical segment constrains it */
+        private static final int FREE = 0;
+        /** a laser above in the same vertical segment lights it */
+        private static final int LIT_ABOVE = 1;
+        /** as LIT_ABOVE, and the laser is the tile just above */
+        private static final int LASER_HERE = 2;
+        /** a dark tile above needs a laser further down the segment */
+        private static final int NEEDED = 3;
+        /** the numbered pillar above needs a laser on it */
+        private static final int MUST = 4;
+        /** the numbered pillar above needs it left empty */
+        private static final int MUST_NOT = 5;
+        /** the numbered pillar above is still waiting on its right neighbour */
+        private static final int PILLAR = 6;
+
+        /** a profile no configuration can finish from */
+        private static final long DEAD = -1;
+
+        private final int height;
+        private final int width;
+        /** the safe was transposed to make its rows the short side */
+        private final boolean transposed;
+        /** the tiles in sweep order */
+        private final int[] tiles;
+
+        /*
+         * Where the parts of the profile live in its long: three bits per
+         * column state, then one dark bit per column, then the rest.
+         */
+        private final int pendingShift;
+        private final long pendingMask;
+        private final long hLaserBit;
+        private final long prevLaserBit;
+        private final int debtShift;
+
+        /** every layer of the sweep, kept to walk a solution back */
+        private final List<Layer> layers;
+        /** the finishing profile of the first solution */
+        private int finish = -1;
+
+        Sweep(SafeConfig config, boolean keepLayers) {
+            int rows = config.getSegments().getRows();
+            int cols = config.getSegments().getCols();
+            this.transposed = cols > rows;
+            this.height = this.transposed ? cols : rows;
+            this.width = this.transposed ? rows : cols;
+            if (this.width > MAX_WIDTH) {
+                throw new IllegalArgumentException("safe is too wide for a profile: " + this.width);
+            }
+            String[][] board = config.getBoard();
+            this.tiles = new int[rows * cols];
+            for (int r = 0; r < this.height; r++) {
+                for (int c = 0; c < this.width; c++) {
+                    String tile = this.transposed ? board[c][r] : board[r][c];
+                    int kind;
+                    if (tile.equals(LasersModel.LASER)) {
+                        kind = LASER;
+                    } else if (tile.equals(LasersModel.FREE_PILLAR)) {
+                        kind = FREE_PILLAR;
+                    } else if (Character.isDigit(tile.charAt(0))) {
+                        kind = tile.charAt(0) - '0';
+                    } else {
+                        kind = EMPTY;
+                    }
+                    this.tiles[r * this.width + c] = kind;
+                }
+            }
+            this.pendingShift = 3 * this.width;
+            this.pendingMask = ((1L << this.width) - 1) << this.pendingShift;
+            this.hLaserBit = 1L << (4 * this.width);
+            this.prevLaserBit = this.hLaserBit << 1;
+            this.debtShift = 4 * this.width + 2;
+            this.layers = keepLayers ? new ArrayList<>() : null;
+        }
+
+        /**
+         * Sweep the whole safe.
+         *
+         * @param control the handle: deadline, cancellation and progress;
+         * it is checked in with once per tile
+         * @return how many solutions there are, up to Long.MAX_VALUE, or 0
+         * if the sweep was stopped
+         */
+        long run(SolveControl control) {
+            SolverStats stats = new SolverStats();
+            try {
+                return run(control, stats);
+            } finally {
+                control.getStats().merge(stats);
+            }
+        }
+
+        /**
+         * Sweep the whole safe, counting each state of a layer as a node
+         * at the depth of its tile, and each step out of it as a successor.
+         *
+         * @param control the handle: deadline, cancellation and progress
+         * @param stats where to count what the sweep does
+         * @return how many solutions there are, or 0 if stopped
+         */
+        private long run(SolveControl control, SolverStats stats) {
+            Layer layer = new Layer();
+            layer.add(0L, 1, -1, false);
+            for (int k = 0; k < this.tiles.length; k++) {
+                int r = k / this.width;
+                int c = k % this.width;
+                stats.visit(k, layer.size);
+                stats.generated(isPillar(r, c) ? layer.size : 2L * layer.size);
+                Layer next = new Layer();
+                for (int i = 0; i < layer.size; i++) {
+                    long state = layer.keys[i];
+                    if (isPillar(r, c)) {
+                        next.add(pillarStep(state, r, c), layer.counts[i], i, false);
+                    } else {
+                        next.add(tileStep(state, r, c, false), layer.counts[i], i, false);
+                        next.add(tileStep(state, r, c, true), layer.counts[i], i, true);
+                    }
+                }
+                if (next.size == 0 || !control.checkIn(layer.size, k)) {
+                    return 0;
+                }
+                if (this.layers != null) {
+                    layer.forget();
+                    this.layers.add(next);
+                }
+                layer = next;
+            }
+
+            // every column must be left without a dark tile
+            long total = 0;
+            for (int i = 0; i < layer.size; i++) {
+                boolean dark = false;
+                for (int c = 0; c < this.width && !dark; c++) {
+                    dark = column(layer.keys[i], c) == NEEDED;
+                }
+                if (!dark) {
+                    if (this.finish < 0) {
+                        this.finish = i;
+                    }
+                    total = add(total, layer.counts[i]);
+                }
+            }
+            return total;
+        }
+
+        /**
+         * Walk the first solution back through the layers.
+         *
+         * @return row-major indices of its lasers, in the safe as given
+         */
+        int[] solution() {
+            int[] lasers = new int[this.tiles.length];
+            int n = 0;
+            int at = this.finish;
+            for (int k = this.tiles.length - 1; k >= 0; k--) {
+                Layer layer = this.layers.get(k);
+                if (layer.lasers[at]) {
+                    int r = k / this.width;
+                    int c = k % this.width;
+                    lasers[n++] = this.transposed ? c * this.height + r : k;
+                }
+                at = layer.parents[at];
+            }
+            return Arrays.copyOf(lasers, n);
+        }
+
+        /**
+         * Decide a non-pillar tile.
+         *
+         * @param state the profile before it
+         * @param r its row
+         * @param c its column
+         * @param laser true to put a laser on it
+         * @return the profile after it, or DEAD
+         */
+        private long tileStep(long state, int r, int c, boolean laser) {
+            int col = column(state, c);
+            if (laser ? col == MUST_NOT : col == MUST || this.tiles[r * this.width + c] == LASER) {
+                return DEAD;
+            }
+            int debt = (int) (state >>> this.debtShift) & 3;
+            if (debt != 0) {
+                // the numbered pillar to the left: what it still needs after
+                // this tile has to come from the tile below it
+                int rest = debt - 1 - (laser ? 1 : 0);
+                boolean below = openBelow(r, c - 1);
+                if (rest < 0 || rest > (below ? 1 : 0)) {
+                    return DEAD;
+                }
+                state = withColumn(state, c - 1, !below ? FREE : rest == 1 ? MUST : MUST_NOT);
+                state &= ~(3L << this.debtShift);
+            }
+            boolean litAbove = col == LIT_ABOVE || col == LASER_HERE;
+            boolean hLaser = (state & this.hLaserBit) != 0;
+            if (laser) {
+                if (litAbove || hLaser) {
+                    return DEAD;
+                }
+                state = withColumn(state, c, LASER_HERE);
+                // the segment's dark tiles are all lit now
+                state = (state & ~this.pendingMask) | this.hLaserBit | this.prevLaserBit;
+            } else {
+                state = withColumn(state, c, litAbove ? LIT_ABOVE : col == NEEDED ? NEEDED : FREE);
+                state &= ~this.prevLaserBit;
+                if (!litAbove && !hLaser) {
+                    state |= 1L << (this.pendingShift + c);
+                }
+            }
+            if (c == this.width - 1) {
+                state = closeSegment(state) & ~this.prevLaserBit;
+            }
+            return state;
+        }
+
+        /**
+         * Step over a pillar.
+         *
+         * @param state the profile before it
+         * @param r its row
+         * @param c its column
+         * @return the profile after it, or DEAD
+         */
+        private long pillarStep(long state, int r, int c) {
+            int col = column(state, c);
+            if (col == NEEDED) {
+                // the vertical segment above ends here with a dark tile
+                return DEAD;
+            }
+            state = closeSegment(state);
+            boolean left = (state & this.prevLaserBit) != 0;
+            state &= ~this.prevLaserBit;
+            int number = this.tiles[r * this.width + c];
+            if (number == FREE_PILLAR) {
+                return withColumn(state, c, FREE);
+            }
+            int debt = number - (col == LASER_HERE ? 1 : 0) - (left ? 1 : 0);
+            boolean right = c + 1 < this.width && !isPillar(r, c + 1);
+            boolean below = openBelow(r, c);
+            if (debt < 0 || debt > (right ? 1 : 0) + (below ? 1 : 0)) {
+                return DEAD;
+            }
+            if (right) {
+                return withColumn(state, c, PILLAR) | (long) (debt + 1) << this.debtShift;
+            }
+            return withColumn(state, c, !below ? FREE : debt == 1 ? MUST : MUST_NOT);
+        }
+
+        /**
+         * End the current horizontal segment: its tiles that are still
+         * dark now need a laser below them.
+         *
+         * @param state the profile
+         * @return the profile with the segment closed
+         */
+        private long closeSegment(long state) {
+            long pending = (state & this.pendingMask) >>> this.pendingShift;
+            while (pending != 0) {
+                int c = Long.numberOfTrailingZeros(pending);
+                state = withColumn(state, c, NEEDED);
+                pending &= pending - 1;
+            }
+            return state & ~this.pendingMask & ~this.hLaserBit;
+        }
+
+        /**
+         * @param r a row of the sweep
+         * @param c a column of the sweep
+         * @return true if the tile is a pillar of any kind
+         */
+        private boolean isPillar(int r, int c) {
+            int tile = this.tiles[r * this.width + c];
+            return tile >= 0 || tile == FREE_PILLAR;
+        }
+
+        /**
+         * @param r a row of the sweep
+         * @param c a column of the sweep
+         * @return true if there is a non-pillar tile below (r, c)
+         */
+        private boolean openBelow(int r, int c) {
+            return r + 1 < this.height && !isPillar(r + 1, c);
+        }
+
+        private static int column(long state, int c) {
+            return (int) (state >>> (3 * c)) & 7;
+        }
+
+        private static long withColumn(long state, int c, int value) {
+            return state & ~(7L << (3 * c)) | (long) value << (3 * c);
+        }
+    }
+
+    /**
+     * adds two counts without overflowing
+     * @param a a count
+     * @param b another count
+     * @return the sum, or Long.MAX_VALUE if it is too big
+     */
+    private static long add(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * The distinct profiles after some number of tiles, with how many
+     * configurations reach each and where the first of them came from.
+     */
+    private static class Layer {
+        private long[] keys = new long[16];
+        private long[] counts = new long[16];
+        private int[] parents = new int[16];
+        private boolean[] lasers = new boolean[16];
+        private int size;
+        /** an open addressing table of key index + 1, 0 for a free slot */
+        private int[] slots = new int[32];
+
+        /**
+         * Add the configurations reaching a profile.
+         *
+         * @param key the profile; DEAD ones are ignored
+         * @param count how many configurations
+         * @param parent the profile in the layer before that they came from
+         * @param laser true if the step put a laser down
+         */
+        void add(long key, long count, int parent, boolean laser) {
+            if (key < 0) {
+                return;
+            }
+            int mask = this.slots.length - 1;
+            int h = hash(key) & mask;
+            while (this.slots[h] != 0) {
+                int i = this.slots[h] - 1;
+                if (this.keys[i] == key) {
+                    this.counts[i] = ProfileSolver.add(this.counts[i], count);
+                    return;
+                }
+                h = (h + 1) & mask;
+            }
+            if (this.size == this.keys.length) {
+                int capacity = this.size * 2;
+                this.keys = Arrays.copyOf(this.keys, capacity);
+                this.counts = Arrays.copyOf(this.counts, capacity);
+                this.parents = Arrays.copyOf(this.parents, capacity);
+                this.lasers = Arrays.copyOf(this.lasers, capacity);
+            }
+            this.keys[this.size] = key;
+            this.counts[this.size] = count;
+            this.parents[this.size] = parent;
+            this.lasers[this.size] = laser;
+            this.slots[h] = ++this.size;
+            if (this.size * 2 > this.slots.length) {
+                rehash();
+            }
+        }
+
+        /**
+         * Drop what is only needed while the layer is being built, keeping
+         * the way back to the layer before.
+         */
+        void forget() {
+            this.keys = null;
+            this.counts = null;
+            this.slots = null;
+        }
+
+        private void rehash() {
+            this.slots = new int[this.slots.length * 2];
+            int mask = this.slots.length - 1;
+            for (int i = 0; i < this.size; i++) {
+                int h = hash(this.keys[i]) & mask;
+                while (this.slots[h] != 0) {
+                    h = (h + 1) & mask;
+                }
+                this.slots[h] = i + 1;
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package lasers.backtracking;
+
+import lasers.model.LasersModel;
+import lasers.model.SegmentIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A safe solver that splits the safe into regions that can't see each
+ * other and solves them on their own.
+ *
+ * Two tiles are in the same region when a chain of line of sight
+ * segments joins them; a laser in one region can never light or see a
+ * tile of another.  The only thing regions can share is a numbered
+ * pillar on their border.  For such a pillar every way of splitting its
+ * number between the regions around it is tried, and each region is
+ * solved for its share.  Regions joined by these pillars form a cluster;
+ * the clusters are independent, so they are solved in parallel.
+ *
+ * Each region is handed to an inner solver as a small safe of its own:
+ * its bounding box, with the tiles of other regions turned into pillars
+ * and the numbered pillars around it showing only its share.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class RegionSolver implements Solver<SafeConfig> {
+    private final Solver<SafeConfig> inner;
+    private final ForkJoinPool pool;
+
+    /**
+     * Initialize a region solver that solves each region on dancing
+     * links, on the common pool.
+     */
+    public RegionSolver() {
+        this(new DancingLinksSolver(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Initialize a region solver.
+     *
+     * @param inner the solver for each region
+     * @param pool the pool the clusters are solved on
+     */
+    public RegionSolver(Solver<SafeConfig> inner, ForkJoinPool pool) {
+        this.inner = inner;
+        this.pool = pool;
+    }
+
+    /**
+     * How many regions a safe falls into.
+     *
+     * @param config a config of the safe
+     * @return the number of regions
+     */
+    public static int countRegions(SafeConfig config) {
+        return new Regions(config).count;
+    }
+
+    /**
+     * Try find a solution, if one exists, for a safe.
+     *
+     * @param config the starting config of a safe
+     * @param control the handle: deadline, cancellation and progress;
+     * it is shared by the solves of every region
+     * @return A solution config, or Optional.empty() if no solution or
+     * the search was stopped
+     */
+    @Override
+    public Optional<Configuration> solve(SafeConfig config, SolveControl control) {
+        Regions regions = new Regions(config);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<ClusterTask> tasks = new ArrayList<>();
+        for (List<Integer> cluster : regions.clusters()) {
+            tasks.add(new ClusterTask(regions, cluster, failed, control));
+        }
+        List<int[]> parts = this.pool.invoke(new RecursiveTask<List<int[]>>() {
+            @Override
+            protected List<int[]> compute() {
+                invokeAll(tasks);
+                List<int[]> parts = new ArrayList<>();
+                for (ClusterTask task : tasks) {
+                    parts.add(task.join());
+                }
+                return parts;
+            }
+        });
+        if (failed.get() || control.isStopped()) {
+            return Optional.empty();
+        }
+
+        // put the regions back together
+        int total = 0;
+        for (int[] part : parts) {
+            total += part.length;
+        }
+        int[] lasers = new int[total];
+        int n = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, lasers, n, part.length);
+            n += part.length;
+        }
+        SafeConfig solution = config.withLasers(lasers);
+        // a numbered pillar with no region around it can only be checked here
+        return solution.isGoal() ? Optional.of(solution) : Optional.empty();
+    }
+
+    /**
+     * Solves one cluster: tries the splits of its shared pillars until
+     * every region in it can be solved for its shares.
+     */
+    private class ClusterTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+        private final Regions regions;
+        private final List<Integer> members;
+        private final AtomicBoolean failed;
+        private final SolveControl control;
+        /** the solution of a region for some shares, by region and shares */
+        private final Map<String, int[]> solved = new HashMap<>();
+
+        ClusterTask(Regions regions, List<Integer> members, AtomicBoolean failed,
+                    SolveControl control) {
+            this.regions = regions;
+            this.members = members;
+            this.failed = failed;
+            this.control = control;
+        }
+
+        @Override
+        protected int[] compute() {
+            Regions rs = this.regions;
+            // the shared pillars of the cluster, and how many of each
+            // region's are decided
+            List<Integer> couplers = new ArrayList<>();
+            for (int r : this.members) {
+                for (int c : rs.regionCouplers.get(r)) {
+                    if (!couplers.contains(c)) {
+                        couplers.add(c);
+                    }
+                }
+            }
+            int[] decided = new int[rs.count];
+            int[] choice = new int[couplers.size() + 1];
+            boolean[] assigned = new boolean[couplers.size()];
+            for (int r : this.members) {
+                if (rs.regionCouplers.get(r).isEmpty() && solveRegion(r) == null) {
+                    return fail();
+                }
+            }
+
+            // an odometer over the splits of the shared pillars
+            int level = 0;
+            choice[0] = -1;
+            while (level >= 0) {
+                if (this.failed.get() || this.control.isStopped()) {
+                    return null;
+                }
+                if (level == couplers.size()) {
+                    List<int[]> parts = new ArrayList<>();
+                    for (int r : this.members) {
+                        parts.add(solveRegion(r));
+                    }
+                    return concat(parts);
+                }
+                int c = couplers.get(level);
+                if (assigned[level]) {
+                    for (int r : rs.couplerRegions[c]) {
+                        decided[r]--;
+                    }
+                    assigned[level] = false;
+                }
+                if (++choice[level] == rs.splits[c].size()) {
+                    // backtracking happens here
+                    level--;
+                    continue;
+                }
+                rs.shares[c] = rs.splits[c].get(choice[level]);
+                assigned[level] = true;
+                boolean ok = true;
+                for (int r : rs.couplerRegions[c]) {
+                    if (++decided[r] == rs.regionCouplers.get(r).size() && solveRegion(r) == null) {
+                        ok = false;
+                    }
+                }
+                if (ok) {
+                    level++;
+                    choice[level] = -1;
+                }
+            }
+            return fail();
+        }
+
+        /**
+         * Solve a region for the current shares of its shared pillars.
+         *
+         * @param r the region
+         * @return its lasers, or null if it has no solution
+         */
+        private int[] solveRegion(int r) {
+            StringBuilder key = new StringBuilder().append(r);
+            for (int c : this.regions.regionCouplers.get(r)) {
+                key.append(',').append(this.regions.share(c, r));
+            }
+            String k = key.toString();
+            if (!this.solved.containsKey(k)) {
+                this.solved.put(k, this.regions.solve(r, RegionSolver.this.inner, this.control));
+            }
+            return this.solved.get(k);
+        }
+
+        private int[] fail() {
+            this.failed.set(true);
+            return null;
+        }
+
+        private int[] concat(List<int[]> parts) {
+            int[] all = new int[0];
+            for (int[] part : parts) {
+                int n = all.length;
+                all = Arrays.copyOf(all, n + part.length);
+                System.arraycopy(part, 0, all, n, part.length);
+            }
+            return all;
+        }
+    }
+
+    /**
+     * The regions of a safe and the numbered pillars they share.
+     */
+    private static class Regions {
+        private final int rows;
+        private final int cols;
+        private final String[][] board;
+        /** the region of each tile, -1 for a pillar */
+        private final int[] region;
+        private int count;
+        /** the tiles of each region, and their bounding box */
+        private final List<List<Integer>> regionTiles = new ArrayList<>();
+        private final List<int[]> boxes = new ArrayList<>();
+
+        /*
+         * The shared numbered pillars ("couplers"): their tiles, the
+         * regions around each, and every way their number can be split
+         * between those regions.  shares holds the split being tried,
+         * written only by the cluster the coupler belongs to.
+         */
+        private final List<Integer> couplerTiles = new ArrayList<>();
+        private int[][] couplerRegions;
+        private List<int[]>[] splits;
+        private int[][] shares;
+        /** the coupler of each pillar tile, -1 if it isn't one */
+        private final int[] couplerOf;
+        /** the couplers around each region */
+        private final List<List<Integer>> regionCouplers = new ArrayList<>();
+
+        Regions(SafeConfig config) {
+            SegmentIndex segments = config.getSegments();
+            this.rows = segments.getRows();
+            this.cols = segments.getCols();
+            this.board = config.getBoard();
+            int cells = this.rows * this.cols;
+
+            // union the tiles of every segment
+            int[] parent = new int[cells];
+            for (int i = 0; i < cells; i++) {
+                parent[i] = i;
+            }
+            for (int i = 0; i < cells; i++) {
+                if (!segments.isPillar(i)) {
+                    union(parent, i, segments.getHorizontalStart(segments.getHorizontal(i)));
+                    union(parent, i, segments.getVerticalStart(segments.getVertical(i)));
+                }
+            }
+            this.region = new int[cells];
+            int[] idOf = new int[cells];
+            Arrays.fill(idOf, -1);
+            for (int i = 0; i < cells; i++) {
+                if (segments.isPillar(i)) {
+                    this.region[i] = -1;
+                    continue;
+                }
+                int root = find(parent, i);
+                if (idOf[root] < 0) {
+                    idOf[root] = this.count++;
+                    this.regionTiles.add(new ArrayList<>());
+                    this.boxes.add(new int[]{this.rows, this.cols, -1, -1});
+                    this.regionCouplers.add(new ArrayList<>());
+                }
+                int r = idOf[root];
+                this.region[i] = r;
+                this.regionTiles.get(r).add(i);
+                int[] box = this.boxes.get(r);
+                box[0] = Math.min(box[0], i / this.cols);
+                box[1] = Math.min(box[1], i % this.cols);
+                box[2] = Math.max(box[2], i / this.cols);
+                box[3] = Math.max(box[3], i % this.cols);
+            }
+
+            // find the numbered pillars next to more than one region
+            this.couplerOf = new int[cells];
+            Arrays.fill(this.couplerOf, -1);
+            List<int[]> regionsAround = new ArrayList<>();
+            List<int[]> openAround = new ArrayList<>();
+            for (int i = 0; i < cells; i++) {
+                if (!segments.isPillar(i) || !isNumbered(i)) {
+                    continue;
+                }
+                int[] rs = new int[4];
+                int[] open = new int[4];
+                int n = 0;
+                for (int j : neighbors(i)) {
+                    int r = this.region[j];
+                    if (r < 0) {
+                        continue;
+                    }
+                    int k = 0;
+                    while (k < n && rs[k] != r) {
+                        k++;
+                    }
+                    if (k == n) {
+                        rs[n++] = r;
+                    }
+                    open[k]++;
+                }
+                if (n > 1) {
+                    this.couplerOf[i] = this.couplerTiles.size();
+                    this.couplerTiles.add(i);
+                    regionsAround.add(Arrays.copyOf(rs, n));
+                    openAround.add(Arrays.copyOf(open, n));
+                }
+            }
+            int couplers = this.couplerTiles.size();
+            this.couplerRegions = regionsAround.toArray(new int[couplers][]);
+            this.shares = new int[couplers][];
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            List<int[]>[] all = new List[couplers];
+            this.splits = all;
+            for (int c = 0; c < couplers; c++) {
+                this.splits[c] = new ArrayList<>();
+                int need = number(this.couplerTiles.get(c));
+                split(openAround.get(c), 0, need, new int[openAround.get(c).length], this.splits[c]);
+                for (int r : this.couplerRegions[c]) {
+                    this.regionCouplers.get(r).add(c);
+                }
+            }
+        }
+
+        /**
+         * The regions joined by shared pillars.
+         *
+         * @return the regions of each cluster
+         */
+        List<List<Integer>> clusters() {
+            int[] parent = new int[this.count];
+            for (int r = 0; r < this.count; r++) {
+                parent[r] = r;
+            }
+            for (int[] rs : this.couplerRegions) {
+                for (int r : rs) {
+                    union(parent, rs[0], r);
+                }
+            }
+            Map<Integer, List<Integer>> byRoot = new HashMap<>();
+            List<List<Integer>> clusters = new ArrayList<>();
+            for (int r = 0; r < this.count; r++) {
+                List<Integer> cluster = byRoot.get(find(parent, r));
+                if (cluster == null) {
+                    cluster = new ArrayList<>();
+                    byRoot.put(find(parent, r), cluster);
+                    clusters.add(cluster);
+                }
+                cluster.add(r);
+            }
+            return clusters;
+        }
+
+        /**
+         * the share of a shared pillar's number being tried for a region
+         * @param c the shared pillar
+         * @param r one of the regions around it
+         * @return how many lasers the region has to put next to it
+         */
+        int share(int c, int r) {
+            int[] rs = this.couplerRegions[c];
+            int k = 0;
+            while (rs[k] != r) {
+                k++;
+            }
+            return this.shares[c][k];
+        }
+
+        /**
+         * Solve a region, as a safe of its own, for the current shares.
+         *
+         * @param r the region
+         * @param inner the solver to use
+         * @param control the handle of the whole solve
+         * @return row-major indices of its lasers in the whole safe, or
+         * null if it has no solution
+         */
+        int[] solve(int r, Solver<SafeConfig> inner, SolveControl control) {
+            // the bounding box, and the pillars around it
+            int[] box = this.boxes.get(r);
+            int top = Math.max(box[0] - 1, 0);
+            int left = Math.max(box[1] - 1, 0);
+            int bottom = Math.min(box[2] + 1, this.rows - 1);
+            int right = Math.min(box[3] + 1, this.cols - 1);
+            String[][] tiles = new String[bottom - top + 1][right - left + 1];
+            for (int row = top; row <= bottom; row++) {
+                for (int col = left; col <= right; col++) {
+                    int i = row * this.cols + col;
+                    String tile = this.board[row][col];
+                    String sub;
+                    if (this.region[i] == r) {
+                        sub = tile.equals(LasersModel.LASER) ? LasersModel.LASER : LasersModel.EMPTY;
+                    } else if (this.region[i] >= 0 || !isNumbered(i) || !touches(i, r)) {
+                        sub = LasersModel.FREE_PILLAR;
+                    } else if (this.couplerOf[i] >= 0) {
+                        sub = String.valueOf(share(this.couplerOf[i], r));
+                    } else {
+                        sub = tile;
+                    }
+                    tiles[row - top][col - left] = sub;
+                }
+            }
+            Optional<Configuration> sol = inner.solve(new SafeConfig(tiles), control);
+            if (!sol.isPresent()) {
+                return null;
+            }
+            String[][] solved = ((SafeConfig) sol.get()).getBoard();
+            int[] lasers = new int[this.regionTiles.get(r).size()];
+            int n = 0;
+            for (int row = 0; row < solved.length; row++) {
+                for (int col = 0; col < solved[row].length; col++) {
+                    if (solved[row][col].equals(LasersModel.LASER)) {
+                        lasers[n++] = (row + top) * this.cols + col + left;
+                    }
+                }
+            }
+            return Arrays.copyOf(lasers, n);
+        }
+
+        private boolean isNumbered(int i) {
+            return Character.isDigit(this.board[i / this.cols][i % this.cols].charAt(0));
+        }
+
+        private int number(int i) {
+            return this.board[i / this.cols][i % this.cols].charAt(0) - '0';
+        }
+
+        /**
+         * @param i a pillar tile
+         * @param r a region
+         * @return true if a tile of the region is next to it
+         */
+        private boolean touches(int i, int r) {
+            for (int j : neighbors(i)) {
+                if (this.region[j] == r) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param i a tile
+         * @return the tiles above, below, left and right of it on the board
+         */
+        private int[] neighbors(int i) {
+            int row = i / this.cols;
+            int col = i % this.cols;
+            int[] around = new int[4];
+            int n = 0;
+            if (row > 0) {
+                around[n++] = i - this.cols;
+            }
+            if (row < this.rows - 1) {
+                around[n++] = i + this.cols;
+            }
+            if (col > 0) {
+                around[n++] = i - 1;
+            }
+            if (col < this.cols - 1) {
+                around[n++] = i + 1;
+            }
+            return Arrays.copyOf(around, n);
+        }
+
+        /**
+         * every way of splitting a number into parts no bigger than open
+         * @param open the most each part can be
+         * @param k the part to fill next
+         * @param left what is left to split
+         * @param parts the parts so far
+         * @param into where the splits go
+         */
+        private static void split(int[] open, int k, int left, int[] parts, List<int[]> into) {
+            if (k == open.length) {
+                if (left == 0) {
+                    into.add(parts.clone());
+                }
+                return;
+            }
+            for (int n = 0; n <= Math.min(open[k], left); n++) {
+                parts[k] = n;
+                split(open, k + 1, left - n, parts, into);
+            }
+        }
+
+        private static int find(int[] parent, int x) {
+            while (parent[x] != x) {
+                parent[x] = parent[parent[x]];
+                x = parent[x];
+            }
+            return x;
+        }
+
+        private static void union(int[] parent, int a, int b) {
+            parent[find(parent, a)] = find(parent, b);
+        }
+    }
+}
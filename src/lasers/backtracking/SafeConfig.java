@@ -3,13 +3,16 @@ package lasers.backtracking;
 import lasers.Lasers;
 import lasers.model.LasersModel;
 import lasers.model.ModelData;
+import lasers.model.SafePuzzle;
+import lasers.model.SegmentIndex;
 
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Scanner;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * The class represents a single configuration of a safe.  It is
@@ -24,157 +27,750 @@ import java.util.Scanner;
  * @author Aby Tiet
  * @author Annie Tiet
  */
-public class SafeConfig implements Configuration {
+public class SafeConfig implements Configuration, MutableConfiguration {
         private int ROWS;
         private int COLS;
-        private String[][] board;
+        /** the tile decided last, -1 before the first */
         private int cursor;
+        /** how many tiles have been decided */
+        private int depth;
+        /** the order the tiles are decided in (shared) */
+        private CellOrder order;
+        /** one bit per decided tile */
+        private long[] decided;
+        /** the tile to decide next, once worked out */
+        private int next = UNKNOWN;
+        /** one bit per tile in row-major order, shared by every config of a safe */
+        private long[] pillars;
+        /** the number on each pillar tile, or FREE for an 'X' pillar */
+        private byte[] pillarNumbers;
+        /** one bit per tile holding a laser */
+        private long[] lasers;
+        /** the line of sight segments of the safe (shared) */
+        private SegmentIndex segments;
+        /** how many lasers are in each horizontal and vertical segment; a
+         * tile is lit by a beam when either of its segments has one */
+        private byte[] horizontalLasers;
+        private byte[] verticalLasers;
+        /** one bit per tile whose applied move placed a laser, for undo */
+        private long[] placed;
+        /** the cursor before each applied move, for undo */
+        private int[] history;
+        private int applied;
+        /** how many undecided tiles are in each segment, for the orders
+         * other than ROW_MAJOR */
+        private int[] horizontalUndecided;
+        private int[] verticalUndecided;
+
+        /** for each tile, the ids of the numbered pillars next to it (shared) */
+        private int[][] adjacentPillars;
+        /** the numbered pillar id of each tile, -1 if it isn't one (shared) */
+        private int[] pillarIds;
+        /** the tile of each numbered pillar (shared) */
+        private int[] pillarTiles;
+        /** how many lasers each numbered pillar needs (shared) */
+        private byte[] pillarNeeds;
+        /** how many lasers are next to each numbered pillar */
+        private byte[] pillarLasers;
+        /** how many undecided tiles next to each numbered pillar could
+         * still take a laser: its remaining capacity */
+        private byte[] pillarOpen;
+        /** how many numbered pillars don't have exactly their number */
+        private int unsatisfied;
+
+        /** pillar number used for a free ('X') pillar */
+        private static final byte FREE = -1;
+        private static final int[] NO_PILLARS = new int[0];
+        /** next before it has been worked out; next is -1 when there is
+         * nothing left worth deciding */
+        private static final int UNKNOWN = -2;
 
 
     public SafeConfig(String filename) throws FileNotFoundException {
-        //create scanner for input file
-        Scanner in = new Scanner(new File(filename));
-        //read dimensions
-        String dims = in.nextLine();
-        String dim[] = dims.split(" ");
-        this.ROWS = Integer.parseInt(dim[0]);
-        this.COLS = Integer.parseInt(dim[1]);
-        //create board
-        this.board = new String[this.ROWS][this.COLS];
+        this(SafePuzzle.read(filename));
+    }
+
+    /**
+     * makes the starting config of a safe file
+     * @param filename the safe file
+     * @param order the order to decide the tiles in
+     * @throws FileNotFoundException if the file can't be opened
+     */
+    public SafeConfig(String filename, CellOrder order) throws FileNotFoundException {
+        this(SafePuzzle.read(filename), order);
+    }
+
+    /**
+     * makes the starting config of a safe from its definition
+     * @param puzzle the safe
+     */
+    public SafeConfig(SafePuzzle puzzle) {
+        this(puzzle, CellOrder.ROW_MAJOR);
+    }
+
+    /**
+     * makes the starting config of a safe from its definition
+     * @param puzzle the safe
+     * @param order the order to decide the tiles in
+     */
+    public SafeConfig(SafePuzzle puzzle, CellOrder order) {
+        this(puzzle.getTiles(), puzzle.getSegments(), order);
+    }
+
+    /**
+     * makes the starting config of a safe from its tiles
+     * @param tiles the tiles, as in a safe file
+     */
+    public SafeConfig(String[][] tiles) {
+        this(tiles, new SegmentIndex(tiles));
+    }
+
+    /**
+     * makes the starting config of a safe from its tiles
+     * @param tiles the tiles, as in a safe file
+     * @param order the order to decide the tiles in
+     */
+    public SafeConfig(String[][] tiles, CellOrder order) {
+        this(tiles, new SegmentIndex(tiles), order);
+    }
+
+    /**
+     * makes the starting config of a safe from its tiles
+     * @param tiles the tiles, as in a safe file
+     * @param segments the line of sight segments of those tiles
+     */
+    public SafeConfig(String[][] tiles, SegmentIndex segments) {
+        this(tiles, segments, CellOrder.ROW_MAJOR);
+    }
+
+    /**
+     * makes the starting config of a safe from its tiles
+     * @param tiles the tiles, as in a safe file
+     * @param segments the line of sight segments of those tiles
+     * @param order the order to decide the tiles in
+     */
+    public SafeConfig(String[][] tiles, SegmentIndex segments, CellOrder order) {
+        this.ROWS = segments.getRows();
+        this.COLS = segments.getCols();
+        this.segments = segments;
+        //create the bitboards
+        int words = (this.ROWS * this.COLS + 63) >>> 6;
+        this.pillars = new long[words];
+        this.pillarNumbers = new byte[this.ROWS * this.COLS];
+        this.lasers = new long[words];
+        this.horizontalLasers = new byte[segments.getHorizontalCount()];
+        this.verticalLasers = new byte[segments.getVerticalCount()];
         for(int r = 0; r < this.ROWS; ++r){
-            String line = in.nextLine();
-            String[] tiles = line.split(" ");
             for(int c = 0; c < this.COLS; ++c){
-                board[r][c] = tiles[c];
+                setTile(r * this.COLS + c, tiles[r][c]);
             }
         }
-        in.close();
         this.cursor = -1; //starting cursor at invalid
+        this.order = order;
+        this.decided = new long[words];
+        countPillars();
+        if (order != CellOrder.ROW_MAJOR) {
+            // only row-major order steps over the pillars; the others
+            // start with them decided and count what is left to decide
+            this.horizontalUndecided = new int[segments.getHorizontalCount()];
+            this.verticalUndecided = new int[segments.getVerticalCount()];
+            for (int i = 0; i < this.ROWS * this.COLS; i++) {
+                if (get(this.pillars, i)) {
+                    set(this.decided, i);
+                    this.depth++;
+                } else {
+                    this.horizontalUndecided[segments.getHorizontal(i)]++;
+                    this.verticalUndecided[segments.getVertical(i)]++;
+                }
+            }
+        }
     }
 
     public SafeConfig(SafeConfig other){
+        this(other, other.nextTile());
+    }
+
+    /**
+     * copies a config
+     * @param other the config to copy
+     * @param tile a tile to decide (as empty) in the copy, or -1 for an
+     * exact copy
+     */
+    private SafeConfig(SafeConfig other, int tile){
         this.ROWS = other.ROWS;
         this.COLS = other.COLS;
-        this.board = new String[this.ROWS][this.COLS];
-        for(int r = 0; r < this.ROWS; r++){
-            for(int c = 0; c < this.COLS; c++){
-                board[r][c] = other.board[r][c];
+        // the pillars never change, so they are shared between configs
+        this.pillars = other.pillars;
+        this.pillarNumbers = other.pillarNumbers;
+        this.lasers = other.lasers.clone();
+        this.segments = other.segments;
+        this.horizontalLasers = other.horizontalLasers.clone();
+        this.verticalLasers = other.verticalLasers.clone();
+        this.adjacentPillars = other.adjacentPillars;
+        this.pillarIds = other.pillarIds;
+        this.pillarTiles = other.pillarTiles;
+        this.pillarNeeds = other.pillarNeeds;
+        this.pillarLasers = other.pillarLasers.clone();
+        this.pillarOpen = other.pillarOpen.clone();
+        this.unsatisfied = other.unsatisfied;
+        this.cursor = other.cursor;
+        this.depth = other.depth;
+        this.order = other.order;
+        this.decided = other.decided.clone();
+        if (other.horizontalUndecided != null) {
+            this.horizontalUndecided = other.horizontalUndecided.clone();
+            this.verticalUndecided = other.verticalUndecided.clone();
+        }
+        if (tile >= 0) {
+            decide(tile);
+        }
+    }
+
+    /**
+     * numbers the numbered pillars, finds the ones next to each tile and
+     * counts the lasers already around them
+     */
+    private void countPillars(){
+        int cells = this.ROWS * this.COLS;
+        this.pillarIds = new int[cells];
+        int[] tiles = new int[cells];
+        int count = 0;
+        for (int i = 0; i < cells; i++) {
+            boolean numbered = get(this.pillars, i) && this.pillarNumbers[i] != FREE;
+            if (numbered) {
+                tiles[count] = i;
+            }
+            this.pillarIds[i] = numbered ? count++ : -1;
+        }
+        this.pillarTiles = Arrays.copyOf(tiles, count);
+        this.pillarNeeds = new byte[count];
+        this.pillarLasers = new byte[count];
+        this.pillarOpen = new byte[count];
+        this.adjacentPillars = new int[cells][];
+        int[] around = new int[4];
+        for (int i = 0; i < cells; i++) {
+            int row = i / this.COLS;
+            int col = i % this.COLS;
+            if (this.pillarIds[i] >= 0) {
+                this.pillarNeeds[this.pillarIds[i]] = this.pillarNumbers[i];
+            }
+            int n = 0;
+            if (row > 0 && this.pillarIds[i - this.COLS] >= 0) {
+                around[n++] = this.pillarIds[i - this.COLS];
+            }
+            if (row < this.ROWS - 1 && this.pillarIds[i + this.COLS] >= 0) {
+                around[n++] = this.pillarIds[i + this.COLS];
+            }
+            if (col > 0 && this.pillarIds[i - 1] >= 0) {
+                around[n++] = this.pillarIds[i - 1];
+            }
+            if (col < this.COLS - 1 && this.pillarIds[i + 1] >= 0) {
+                around[n++] = this.pillarIds[i + 1];
+            }
+            this.adjacentPillars[i] = n == 0 ? NO_PILLARS : Arrays.copyOf(around, n);
+            for (int k = 0; k < n; k++) {
+                if (get(this.lasers, i)) {
+                    this.pillarLasers[around[k]]++;
+                }
+                if (!get(this.pillars, i)) {
+                    this.pillarOpen[around[k]]++;
+                }
+            }
+        }
+        for (int p = 0; p < count; p++) {
+            if (this.pillarLasers[p] != this.pillarNeeds[p]) {
+                this.unsatisfied++;
             }
         }
-        this.cursor = other.cursor + 1;
     }
 
     /**
-     * returns the board of the safe config
-     * @return
+     * updates the counts of the numbered pillars next to a tile when that
+     * tile is decided (or undecided again)
+     * @param index row-major index of the tile
+     * @param openStep 1 when the tile is decided, -1 when that is undone
+     * @param laserStep 1 when a laser goes on the tile, -1 when it comes off
      */
-    public String[][] getBoard()
-    {
-        return this.board;
+    private void updatePillars(int index, int openStep, int laserStep){
+        for (int p : this.adjacentPillars[index]) {
+            if (this.pillarLasers[p] == this.pillarNeeds[p]) {
+                this.unsatisfied++;
+            }
+            if (!get(this.pillars, index)) {
+                this.pillarOpen[p] -= openStep;
+            }
+            this.pillarLasers[p] += laserStep;
+            if (this.pillarLasers[p] == this.pillarNeeds[p]) {
+                this.unsatisfied--;
+            }
+        }
     }
 
     /**
-     * adds a laser to the board
-     * @param row row coordinate
-     * @param col column coordinate
+     * decides a tile, as empty for now, and makes it the cursor
+     * @param index row-major index of the tile
      */
-    private void addLaser(int row, int col){
-        this.board[row][col] = LasersModel.LASER;
-        addBeams(row,col);
+    private void decide(int index){
+        this.cursor = index;
+        this.depth++;
+        set(this.decided, index);
+        updatePillars(index, 1, 0);
+        if (this.horizontalUndecided != null && !get(this.pillars, index)) {
+            this.horizontalUndecided[this.segments.getHorizontal(index)]--;
+            this.verticalUndecided[this.segments.getVertical(index)]--;
+        }
+        this.next = UNKNOWN;
     }
 
     /**
-     * checks if this spot is a pillar
-     * @param row row coordinate
-     * @param col column coordinate
-     * @return
+     * takes back decide; the cursor is left for the caller to restore
+     * @param index row-major index of the tile
      */
-    private boolean isPillar(int row, int col){
-        switch (this.board[row][col]) {
-            case LasersModel.FREE_PILLAR:
-            case LasersModel.ZERO:
-            case LasersModel.ONE:
-            case LasersModel.TWO:
-            case LasersModel.THREE:
-            case LasersModel.FOUR:
-                return true;
-            default:
-                return false;
+    private void undecide(int index){
+        if (this.horizontalUndecided != null && !get(this.pillars, index)) {
+            this.horizontalUndecided[this.segments.getHorizontal(index)]++;
+            this.verticalUndecided[this.segments.getVertical(index)]++;
         }
+        updatePillars(index, -1, 0);
+        clear(this.decided, index);
+        this.depth--;
+        this.next = UNKNOWN;
     }
 
     /**
-     * adds beams based on where the laser was placed
-     * @param row row coordinate
-     * @param col column coordinate
+     * the tile to decide next, by the order of this config
+     * @return row-major index of the tile, or -1 if every tile has been
+     * decided or the config can't be finished
      */
-    public void addBeams(int row, int col){
-        for (int i = col; i < this.COLS; i++) {
-            if (this.board[row][i].equals(LasersModel.EMPTY)) {
-                this.board[row][i] = LasersModel.BEAM;
+    private int nextTile(){
+        if (this.next == UNKNOWN) {
+            if (this.depth == this.ROWS * this.COLS) {
+                this.next = -1;
+            } else if (this.order == CellOrder.PILLAR_SLACK) {
+                this.next = tightestPillarTile();
+            } else if (this.order == CellOrder.FEWEST_LIGHTERS) {
+                this.next = fewestLightersTile();
+            } else {
+                this.next = this.cursor + 1;
             }
-            if (isPillar(row,i)) {
-                break;
+        }
+        return this.next;
+    }
+
+    /**
+     * an undecided tile next to the numbered pillar with the least slack:
+     * the fewer of the lasers it still needs and the undecided neighbours
+     * that must stay empty.  At 0 every neighbour is forced.
+     * @return the tile, or as fewestLightersTile once no numbered pillar
+     * has an undecided neighbour
+     */
+    private int tightestPillarTile(){
+        int best = -1;
+        int bestSlack = Integer.MAX_VALUE;
+        for (int p = 0; p < this.pillarTiles.length; p++) {
+            if (this.pillarOpen[p] > 0) {
+                int missing = this.pillarNeeds[p] - this.pillarLasers[p];
+                int slack = Math.min(missing, this.pillarOpen[p] - missing);
+                if (slack < bestSlack) {
+                    bestSlack = slack;
+                    best = p;
+                }
             }
         }
-        //build beam down
-        for (int j = row; j < this.ROWS; j++) {
-            if (this.board[j][col].equals(LasersModel.EMPTY)) {
-                this.board[j][col] = LasersModel.BEAM;
+        if (best < 0) {
+            return fewestLightersTile();
+        }
+        int tile = this.pillarTiles[best];
+        int row = tile / this.COLS;
+        int col = tile % this.COLS;
+        if (row > 0 && isUndecided(tile - this.COLS)) {
+            return tile - this.COLS;
+        } else if (row < this.ROWS - 1 && isUndecided(tile + this.COLS)) {
+            return tile + this.COLS;
+        } else if (col > 0 && isUndecided(tile - 1)) {
+            return tile - 1;
+        }
+        return tile + 1;
+    }
 
+    /**
+     * a tile that can light the dark tile with the fewest undecided tiles
+     * left that could light it: the tile itself if it is undecided,
+     * otherwise the first undecided tile of its segments
+     * @return the tile, -1 if some dark tile can no longer be lit, or the
+     * first undecided tile if every tile is lit
+     */
+    private int fewestLightersTile(){
+        int best = -1;
+        int fewest = Integer.MAX_VALUE;
+        for (int h = 0; h < this.horizontalLasers.length && fewest > 1; h++) {
+            if (this.horizontalLasers[h] > 0) {
+                continue;
             }
-            if (isPillar(j,col)) {
-                break;
+            for (int i = this.segments.getHorizontalStart(h); i <= this.segments.getHorizontalEnd(h); i++) {
+                int v = this.segments.getVertical(i);
+                if (this.verticalLasers[v] == 0) {
+                    // both segments are dark, so their undecided tiles are all empty
+                    int lighters = this.horizontalUndecided[h] + this.verticalUndecided[v] -
+                            (isUndecided(i) ? 1 : 0);
+                    if (lighters == 0) {
+                        return -1;
+                    }
+                    if (lighters < fewest) {
+                        fewest = lighters;
+                        best = i;
+                    }
+                }
             }
         }
-        //build beam left
-        for (int k = col; k >= 0; k--) {
-            if (this.board[row][k].equals(LasersModel.EMPTY)) {
-                this.board[row][k] = LasersModel.BEAM;
-            }
-            if (isPillar(row,k)) {
-                break;
+        if (best < 0) {
+            return firstUndecided();
+        }
+        if (isUndecided(best)) {
+            return best;
+        }
+        int h = this.segments.getHorizontal(best);
+        for (int i = this.segments.getHorizontalStart(h); i <= this.segments.getHorizontalEnd(h); i++) {
+            if (isUndecided(i)) {
+                return i;
             }
         }
-        //build beam up
-        for (int l = row; l >= 0; l--) {
-            if (this.board[l][col].equals(LasersModel.EMPTY)) {
-                this.board[l][col] = LasersModel.BEAM;
+        int v = this.segments.getVertical(best);
+        int i = this.segments.getVerticalStart(v);
+        while (!isUndecided(i)) {
+            i += this.COLS;
+        }
+        return i;
+    }
 
+    /**
+     * @return the first undecided tile in row-major order
+     */
+    private int firstUndecided(){
+        for (int w = 0; ; w++) {
+            if (this.decided[w] != -1L) {
+                return (w << 6) + Long.numberOfTrailingZeros(~this.decided[w]);
             }
-            if (isPillar(l,col)) {
+        }
+    }
+
+    /**
+     * @param index row-major index of a tile
+     * @return true if the tile hasn't been decided yet
+     */
+    private boolean isUndecided(int index){
+        return !get(this.decided, index);
+    }
+
+    /**
+     * stores a tile read from a safe file into the bitboards
+     * @param index row-major index of the tile
+     * @param tile the tile string
+     */
+    private void setTile(int index, String tile){
+        switch (tile) {
+            case LasersModel.LASER:
+                set(this.lasers, index);
+                this.horizontalLasers[this.segments.getHorizontal(index)]++;
+                this.verticalLasers[this.segments.getVertical(index)]++;
+                break;
+            case LasersModel.FREE_PILLAR:
+                set(this.pillars, index);
+                this.pillarNumbers[index] = FREE;
+                break;
+            case LasersModel.ZERO:
+            case LasersModel.ONE:
+            case LasersModel.TWO:
+            case LasersModel.THREE:
+            case LasersModel.FOUR:
+                set(this.pillars, index);
+                this.pillarNumbers[index] = (byte) (tile.charAt(0) - '0');
+                break;
+            default:
                 break;
+        }
+    }
+
+    /**
+     * the tile string at a row-major index
+     * @param index row-major index of the tile
+     * @return the tile as it appears in a safe file
+     */
+    private String getTile(int index){
+        if (get(this.lasers, index)) {
+            return LasersModel.LASER;
+        } else if (get(this.pillars, index)) {
+            byte num = this.pillarNumbers[index];
+            return num == FREE ? LasersModel.FREE_PILLAR : String.valueOf(num);
+        } else if (isLit(index)) {
+            return LasersModel.BEAM;
+        }
+        return LasersModel.EMPTY;
+    }
+
+    /**
+     * returns the board of the safe config
+     * @return
+     */
+    public String[][] getBoard()
+    {
+        String[][] board = new String[this.ROWS][this.COLS];
+        for(int r = 0; r < this.ROWS; r++){
+            for(int c = 0; c < this.COLS; c++){
+                board[r][c] = getTile(r * this.COLS + c);
+            }
+        }
+        return board;
+    }
+
+    /**
+     * the line of sight segments of the safe
+     * @return the segment index, shared by every config of this safe
+     */
+    SegmentIndex getSegments(){
+        return this.segments;
+    }
+
+    /**
+     * decides every tile left after the cursor, putting lasers on the
+     * given ones.  This is how an engine that finds the lasers some other
+     * way turns them back into a config.
+     * @param tiles row-major indices of the tiles to put lasers on
+     * @return the finished config; it is a goal if those lasers solve the safe
+     */
+    public SafeConfig withLasers(int[] tiles){
+        long[] chosen = new long[this.lasers.length];
+        for (int tile : tiles) {
+            set(chosen, tile);
+        }
+        SafeConfig result = new SafeConfig(this, -1);
+        for (int i = 0; i < this.ROWS * this.COLS; i++) {
+            if (result.isUndecided(i)) {
+                result.decide(i);
+                if (get(chosen, i) && result.isEmptyTile(i)) {
+                    result.addLaser(i / this.COLS, i % this.COLS);
+                }
             }
         }
+        return result;
     }
 
     /**
-     * Two successors from a valid config: If tile isn't a pillar,
-     * we can make it a LASER or EMPTY.
+     * adds a laser to the board
+     * @param row row coordinate
+     * @param col column coordinate
+     */
+    private void addLaser(int row, int col){
+        int index = row * this.COLS + col;
+        set(this.lasers, index);
+        this.next = UNKNOWN;
+        updatePillars(index, 0, 1);
+        //the beams are the two segments the laser sits in
+        this.horizontalLasers[this.segments.getHorizontal(index)]++;
+        this.verticalLasers[this.segments.getVertical(index)]++;
+    }
+
+    /**
+     * takes a laser off the board
+     * @param index row-major index of the laser
+     */
+    private void removeLaser(int index){
+        clear(this.lasers, index);
+        this.next = UNKNOWN;
+        updatePillars(index, 0, -1);
+        this.horizontalLasers[this.segments.getHorizontal(index)]--;
+        this.verticalLasers[this.segments.getVertical(index)]--;
+    }
+
+    /**
+     * checks if this spot holds a laser
+     * @param row row coordinate
+     * @param col column coordinate
+     * @return
+     */
+    boolean isLaser(int row, int col){
+        return get(this.lasers, row * this.COLS + col);
+    }
+
+    /**
+     * checks if a laser's beam crosses this spot (or a laser is on it)
+     * @param index row-major index of a non-pillar tile
+     * @return
+     */
+    private boolean isLit(int index){
+        return this.horizontalLasers[this.segments.getHorizontal(index)] > 0 ||
+                this.verticalLasers[this.segments.getVertical(index)] > 0;
+    }
+
+    /**
+     * checks if this spot is an empty tile: no pillar, laser or beam
+     * @param index row-major index of the tile
+     * @return
+     */
+    private boolean isEmptyTile(int index){
+        return !get(this.pillars, index) && !isLit(index);
+    }
+
+    /**
+     * Two successors from a valid config: If the next tile isn't a
+     * pillar, we can make it a LASER or EMPTY.
      * @return the successors
      */
     @Override
     public Collection<Configuration> getSuccessors() {
         Collection<Configuration> successors = new ArrayList<>();
-        SafeConfig succ1 = new SafeConfig(this);
-
-        //if the cursor of succ1 points to empty tile, put a laser on it
-        int row = succ1.cursor / COLS ;
-        int col = succ1.cursor % COLS ;
-        if(row == this.ROWS){
+        int tile = nextTile();
+        if(tile < 0){
             return successors;
         }
-        if(board[row][col].equals(".")) {
-            succ1.addLaser(row, col);
+
+        //if the next tile is empty, put a laser on it
+        if(isEmptyTile(tile)) {
+            SafeConfig succ1 = new SafeConfig(this, tile);
+            succ1.addLaser(tile / COLS, tile % COLS);
             successors.add(succ1);
         }
 
-        SafeConfig succ2 = new SafeConfig(this);
+        SafeConfig succ2 = new SafeConfig(this, tile);
         successors.add(succ2);
 
         return successors;
     }
 
+    /**
+     * The successors of getSuccessors, each one only copied from this
+     * config when the search gets to it.
+     * @return an iterator over the successors
+     */
+    @Override
+    public Iterator<Configuration> successorIterator() {
+        return new Iterator<Configuration>() {
+            private final int tile = nextTile();
+            /** the move of the next successor: 0 for a laser, 1 for none, 2 once done */
+            private int move = this.tile < 0 ? 2 : isEmptyTile(this.tile) ? 0 : 1;
+
+            @Override
+            public boolean hasNext() {
+                return this.move < 2;
+            }
+
+            @Override
+            public Configuration next() {
+                if (this.move == 2) {
+                    throw new NoSuchElementException();
+                }
+                SafeConfig succ = new SafeConfig(SafeConfig.this, this.tile);
+                if (this.move++ == 0) {
+                    succ.addLaser(this.tile / COLS, this.tile % COLS);
+                }
+                return succ;
+            }
+        };
+    }
+
+    /**
+     * Two moves from a valid config, as in getSuccessors: move 0 puts a
+     * laser on the next tile, move 1 leaves it as it is.
+     * @return 2, or 0 once there is no tile left worth deciding
+     */
+    @Override
+    public int getMoveCount() {
+        return nextTile() >= 0 ? 2 : 0;
+    }
+
+    /**
+     * moves the cursor onto the next tile, putting a laser there for move 0
+     * @param move 0 for a laser, 1 to leave the tile alone
+     * @return false if a laser can't go on that tile
+     */
+    @Override
+    public boolean apply(int move) {
+        int tile = nextTile();
+        if (tile < 0 || (move == 0 && !isEmptyTile(tile))) {
+            return false;
+        }
+        if (this.placed == null) {
+            this.placed = new long[this.lasers.length];
+            this.history = new int[this.ROWS * this.COLS];
+        }
+        this.history[this.applied++] = this.cursor;
+        decide(tile);
+        if (move == 0) {
+            set(this.placed, tile);
+            addLaser(tile / this.COLS, tile % this.COLS);
+        }
+        return true;
+    }
+
+    /**
+     * the moves applied to this config so far, oldest first
+     * @return for each move, the tile it decided shifted left a bit,
+     * plus 1 if it put a laser there
+     */
+    int[] getDecisions() {
+        int[] decisions = new int[this.applied];
+        for (int i = 0; i < this.applied; i++) {
+            int tile = i + 1 < this.applied ? this.history[i + 1] : this.cursor;
+            decisions[i] = tile << 1 | (get(this.placed, tile) ? 1 : 0);
+        }
+        return decisions;
+    }
+
+    /**
+     * how many dark tiles a laser on a tile would light
+     * @param tile row-major index of the tile
+     * @return the dark tiles in its segments, not counting itself
+     */
+    int darkInSight(int tile) {
+        int count = 0;
+        int h = this.segments.getHorizontal(tile);
+        if (this.horizontalLasers[h] == 0) {
+            for (int i = this.segments.getHorizontalStart(h); i <= this.segments.getHorizontalEnd(h); i++) {
+                if (i != tile && !isLit(i)) {
+                    count++;
+                }
+            }
+        }
+        int v = this.segments.getVertical(tile);
+        if (this.verticalLasers[v] == 0) {
+            for (int i = this.segments.getVerticalStart(v); i <= this.segments.getVerticalEnd(v); i += this.COLS) {
+                if (i != tile && !isLit(i)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * the tile decided last
+     * @return its row-major index, -1 if none has been
+     */
+    int getCursor() {
+        return this.cursor;
+    }
+
+    /**
+     * an exact copy of this config, without its applied moves
+     * @return the copy
+     */
+    SafeConfig copy() {
+        return new SafeConfig(this, -1);
+    }
+
+    /**
+     * takes back the laser (and so its beams) of the last applied move
+     */
+    @Override
+    public void undo() {
+        if (get(this.placed, this.cursor)) {
+            clear(this.placed, this.cursor);
+            removeLaser(this.cursor);
+        }
+        undecide(this.cursor);
+        this.cursor = this.history[--this.applied];
+    }
+
     /**
      * does this interfere with lasers already placed? if cursor pointing
      * to the last cell, checks for adequate number of lasers and then if
@@ -189,105 +785,58 @@ public class SafeConfig implements Configuration {
         int row = this.cursor / COLS;
         int col = this.cursor % COLS;
         //check for lasers in path if a laser is placed
-        if (this.board[row][col].equals(LasersModel.LASER)){
+        if (isLaser(row,col)){
             if(!lasersBuddies(row,col)){
                 return false;
             }
         }
-        //if its a pillar, check if there are too many lasers put next to it
-        for(int r = 0; r < this.ROWS; r++){
-            for(int c= 0; c < this.COLS; c++) {
-                if (isPillar(r, c)) {
-                    boolean flag = checkPillarsTooMany(r,c);
-                    if (!flag) {
-                        return false;
-                    }
-
-                }
+        //only the pillars next to the decided tile have changed: check they
+        //don't have too many lasers, or too few tiles left to reach their number
+        for (int p : this.adjacentPillars[this.cursor]) {
+            if (this.pillarLasers[p] > this.pillarNeeds[p] ||
+                    this.pillarLasers[p] + this.pillarOpen[p] < this.pillarNeeds[p]) {
+                return false;
             }
         }
         return true;
     }
 
     /**
-     * checks if the cursor points to the last cell in the board
-     * @return boolean if this is a goal solution or not, false if not
+     * why this config was thrown away: it is not valid, or it is a dead
+     * end that isn't a goal
+     * @return the first check it fails, as isValid and isGoal make them
      */
-    @Override
-    public boolean isGoal() {
-        if(cursor == ROWS*COLS-1){
-            for(int r = 0; r < this.ROWS; r++){
-                for(int c= 0; c < this.COLS; c++) {
-                    if (isPillar(r, c)) {
-                        boolean flag = checkPillars(r, c);
-                        if (!flag) {
-                            return false;
-                        }
-                    }
+    SolverStats.Rejection rejection() {
+        int row = this.cursor / COLS;
+        int col = this.cursor % COLS;
+        if (this.cursor >= 0 && isLaser(row, col) && !lasersBuddies(row, col)) {
+            return SolverStats.Rejection.LINE_OF_SIGHT;
+        }
+        if (this.cursor >= 0) {
+            for (int p : this.adjacentPillars[this.cursor]) {
+                if (this.pillarLasers[p] > this.pillarNeeds[p]) {
+                    return SolverStats.Rejection.PILLAR_OVERFLOW;
+                } else if (this.pillarLasers[p] + this.pillarOpen[p] < this.pillarNeeds[p]) {
+                    return SolverStats.Rejection.PILLAR_STARVED;
                 }
             }
-            return !isEmpty();
         }
-        return false;
+        if (this.unsatisfied > 0 && this.depth == ROWS*COLS) {
+            return SolverStats.Rejection.GOAL_PILLARS;
+        }
+        return SolverStats.Rejection.GOAL_EMPTY;
     }
 
     /**
-     * returns an ArrayList of string with "row col" of neighboring spots of a tile
-     *
-     * @param row row of tile checked
-     * @param col col of tile checked
-     * @return ArrayList of neighbor coordinates
-     */
-    public ArrayList getNeighbors(int row, int col) {
-        ArrayList<String> neighbors = new ArrayList();
-        if (col == this.COLS - 1) // right side
-        {
-            if (row == this.ROWS - 1) // SE corner: left & top
-            {
-                neighbors.add(row + " " + (col - 1));
-                neighbors.add((row - 1) + " " + col);
-            } else if (row == 0) { //NE corner: bottom & left
-                neighbors.add((row + 1) + " " + col);
-                neighbors.add(row + " " + (col - 1));
-            } else { //left, top, bottom
-                neighbors.add(row + " " + (col - 1));
-                neighbors.add((row - 1) + " " + col);
-                neighbors.add((row + 1) + " " + col);
-            }
-        } else if (col == 0) { // left side
-            if (row == this.ROWS - 1) { //SW corner: right & top
-                neighbors.add(row + " " + (col + 1));
-                neighbors.add((row - 1) + " " + col);
-            } else if (row == 0) { //NW corner: bottom & right
-                neighbors.add((row + 1) + " " + col);
-                neighbors.add(row + " " + (col + 1));
-            } else //right top bottom
-            {
-                neighbors.add(row + " " + (col + 1));
-                neighbors.add((row - 1) + " " + col);
-                neighbors.add((row + 1) + " " + col);
-            }
-        } else if (row == 0) //top
-        {
-            //bottom, left, right
-            neighbors.add((row + 1) + " " + col);
-            neighbors.add(row + " " + (col - 1));
-            neighbors.add(row + " " + (col + 1));
-        } else if (row == this.ROWS - 1) //bottom
-        {
-            //top, left, right
-            neighbors.add((row - 1) + " " + col);
-            neighbors.add(row + " " + (col - 1));
-            neighbors.add(row + " " + (col + 1));
-        } else //in the middle
-        {
-            neighbors.add(row + " " + (col + 1));
-            neighbors.add(row + " " + (col - 1));
-            neighbors.add((row - 1) + " " + col);
-            neighbors.add((row + 1) + " " + col);
-
-        }
-        return neighbors;
+     * checks if every tile of the board has been decided
+     * @return boolean if this is a goal solution or not, false if not
+     */
+    @Override
+    public boolean isGoal() {
+        if(depth == ROWS*COLS){
+            return this.unsatisfied == 0 && !isEmpty();
+        }
+        return false;
     }
 
     /**
@@ -298,89 +847,19 @@ public class SafeConfig implements Configuration {
      * @return true if correct amount of pillars, false otherwise
      */
     public boolean checkPillars(int row, int col) {
-        String pillar = board[row][col];
-        boolean noError = true;
-        ArrayList<String> neighbors = getNeighbors(row, col);
-        int num = 0;
-        int count = 0;
-        switch (pillar) {
-            case LasersModel.FREE_PILLAR:
-                return true;
-            case LasersModel.FOUR:
-                num = 4;
-                break;
-            case LasersModel.THREE:
-                num = 3;
-                break;
-            case LasersModel.TWO:
-                num = 2;
-                break;
-            case LasersModel.ONE:
-                num = 1;
-                break;
-            case LasersModel.ZERO:
-                num = 0;
-                break;
-        }
-        for (String neighbor : neighbors) {
-            String[] coordinate = neighbor.split(" ");
-            int r = Integer.parseInt(coordinate[0]);
-            int c = Integer.parseInt(coordinate[1]);
-            String buddy = board[r][c];
-            if (buddy.equals(LasersModel.LASER)) {
-                count++;
-            }
-        }
-        if (count != num) {
-            noError = false;
-        }
-        return noError;
+        int p = this.pillarIds[row * this.COLS + col];
+        return p < 0 || this.pillarLasers[p] == this.pillarNeeds[p];
     }
 
     /**
      * checks if there are too many lasers placed next to a pillar
      * @param row row coordinate of the pillar
      * @param col column coordinate of the pillar
-     * @return true if there are too many pillars, false if ok
+     * @return false if there are too many lasers, true if ok
      */
     public boolean checkPillarsTooMany(int row, int col) {
-        String pillar = board[row][col];
-        boolean noError = true;
-        ArrayList<String> neighbors = getNeighbors(row, col);
-        int num = 0;
-        int count = 0;
-        switch (pillar) {
-            case LasersModel.FREE_PILLAR:
-                return true;
-            case LasersModel.FOUR:
-                num = 4;
-                break;
-            case LasersModel.THREE:
-                num = 3;
-                break;
-            case LasersModel.TWO:
-                num = 2;
-                break;
-            case LasersModel.ONE:
-                num = 1;
-                break;
-            case LasersModel.ZERO:
-                num = 0;
-                break;
-        }
-        for (String neighbor : neighbors) {
-            String[] coordinate = neighbor.split(" ");
-            int r = Integer.parseInt(coordinate[0]);
-            int c = Integer.parseInt(coordinate[1]);
-            String buddy = board[r][c];
-            if (buddy.equals(LasersModel.LASER)) {
-                count++;
-            }
-        }
-        if (count > num) {
-            noError = false;
-        }
-        return noError;
+        int p = this.pillarIds[row * this.COLS + col];
+        return p < 0 || this.pillarLasers[p] <= this.pillarNeeds[p];
     }
 
     /**
@@ -391,45 +870,11 @@ public class SafeConfig implements Configuration {
      * @return true if no lasers interfering, false if there is a laser in another's path
      */
     public boolean lasersBuddies(int rowCur, int colCur){
-        //check the right of the laser
-        for (int i = colCur + 1; i < this.COLS; i++) {
-            if (this.board[rowCur][i].equals(LasersModel.LASER)) {
-                return false;
-            }
-            if (isPillar(rowCur,i)) {
-                break;
-            }
-        }
-
-        //check under laser
-        for (int j = rowCur + 1; j < this.ROWS; j++) {
-            if (this.board[j][colCur].equals(LasersModel.LASER)) {
-                return false;
-            }
-            if (isPillar(j,colCur)) {
-                break;
-            }
-        }
-        //check the left of the laser
-        for (int k = colCur - 1; k >= 0; k--) {
-            if (this.board[rowCur][k].equals(LasersModel.LASER)) {
-                return false;
-            }
-            if (isPillar(rowCur,k)) {
-                break;
-            }
-        }
-        //check above laser
-        for (int l = rowCur - 1; l >= 0; l--) {
-            if (this.board[l][colCur].equals(LasersModel.LASER)) {
-                return false;
-            }
-            if (isPillar(l,colCur)) {
-                break;
-            }
-        }
-
-        return true;
+        //another laser in either segment of this tile can see it
+        int cur = rowCur * this.COLS + colCur;
+        int self = isLaser(rowCur, colCur) ? 1 : 0;
+        return this.horizontalLasers[this.segments.getHorizontal(cur)] <= self &&
+                this.verticalLasers[this.segments.getVertical(cur)] <= self;
     }
 
 
@@ -438,10 +883,13 @@ public class SafeConfig implements Configuration {
      * @return true if empty, false otherwise
      */
     public boolean isEmpty(){
-        for(int r = 0; r < this.ROWS; r++){
-            for(int c = 0; c < this.COLS; c++){
-                if(this.board[r][c].equals(".")){
-                    return true;
+        //only the dark horizontal segments can hold an empty tile
+        for(int h = 0; h < this.horizontalLasers.length; h++){
+            if(this.horizontalLasers[h] == 0){
+                for(int i = this.segments.getHorizontalStart(h); i <= this.segments.getHorizontalEnd(h); i++){
+                    if(this.verticalLasers[this.segments.getVertical(i)] == 0){
+                        return true;
+                    }
                 }
             }
         }
@@ -474,10 +922,43 @@ public class SafeConfig implements Configuration {
             str.append(row).append("|");
             // build the columns of the safe
             for (int col = 0; col < this.COLS; ++col) {
-                str.append(this.board[row][col] + " ");
+                str.append(getTile(row * this.COLS + col) + " ");
             }
             str.append("\n");
         }
         return str.toString();
     }
-}
\ No newline at end of file
+
+    /*
+     * Bitboard helpers.  Tiles are numbered in row-major order and tile i
+     * lives in bit (i % 64) of word (i / 64).
+     */
+
+    /**
+     * is bit i set?
+     * @param bits the bitboard
+     * @param i the tile index
+     * @return true if set
+     */
+    private static boolean get(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * sets bit i
+     * @param bits the bitboard
+     * @param i the tile index
+     */
+    private static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    /**
+     * clears bit i
+     * @param bits the bitboard
+     * @param i the tile index
+     */
+    private static void clear(long[] bits, int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+}
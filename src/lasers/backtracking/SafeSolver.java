@@ -1,42 +1,179 @@
 package lasers.backtracking;
 
-import java.io.FileNotFoundException;
+import lasers.model.SafePuzzle;
+import lasers.model.SolutionCache;
+
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Optional;
 
 /**
  * This is the main class for a safe solver.  It runs the backtracking
  * algorithm and displays the solution, if one exists.
  *
+ * The optional engine argument picks how the search is run:
+ * "copy" (the default) makes new configurations for every successor,
+ * "inplace" changes one configuration and undoes each move instead,
+ * "parallel" splits the search over every core,
+ * "dlx" solves the safe as a cover problem on dancing links,
+ * "profile" sweeps a narrow safe with a broken profile,
+ * "regions" splits the safe into regions that can't see each other,
+ * "auto" picks the profile sweep for narrow safes and "dlx" for the rest,
+ * "cached" looks the safe up in the SolutionCache and only solves it
+ * ("auto") if it isn't there, then remembers what it found,
+ * "count" searches the whole tree in place and reports how many
+ * solutions there are instead of showing one.
+ *
+ * The optional order argument picks the order the tiles are decided in:
+ * row_major (the default), pillar_slack or fewest_lighters.
+ *
+ * The optional timeout argument gives up after that many seconds.  While
+ * the search runs, how far it has got is reported every few seconds.
+ *
+ * With "stats" for debug, the statistics of the solve are printed after
+ * it: nodes, successors, why configurations were rejected and how deep
+ * the search went.  With "trace:file" (or "trace:file:n" to keep one
+ * node in n) the copy, inplace and count searches are traced into a
+ * binary file instead of printed; TraceDecoder reads it back.
+ *
  * @author RIT CS
  */
 public class SafeSolver {
-    public static void main(String[] args) throws FileNotFoundException {
-        if (args.length != 2) {
-            System.out.println("Usage: java SafeSolver safe.in debug");
+    /** how often progress is reported, in milliseconds */
+    private static final long PROGRESS_INTERVAL = 5000;
+    /** how many records a trace keeps: the last million nodes */
+    private static final long TRACE_CAPACITY = 1 << 20;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 5) {
+            System.out.println("Usage: java SafeSolver safe.in [true|false|stats|trace:file[:n]] [copy|inplace|parallel|dlx|profile|regions|auto|cached|count]" +
+                    " [row_major|pillar_slack|fewest_lighters] [timeout seconds]");
         } else {
             // construct the initial configuration from the file
-            Configuration init = new SafeConfig(args[0]);
+            CellOrder order = args.length >= 4 ?
+                    CellOrder.valueOf(args[3].toUpperCase()) : CellOrder.ROW_MAJOR;
+            SafePuzzle puzzle = SafePuzzle.read(args[0]);
+            SafeConfig init = new SafeConfig(puzzle, order);
+            String engine = args.length >= 3 ? args[2] : "copy";
 
             // create the backtracker with the debug flag
             boolean debug = args[1].equals("true");
+            boolean stats = args[1].equals("stats");
             Backtracker bt = new Backtracker(debug);
+            if (engine.equals("profile") && !ProfileSolver.fits(init)) {
+                System.out.println("The profile engine only takes safes at most " +
+                        ProfileSolver.MAX_WIDTH + " tiles across; try auto.");
+                return;
+            }
+            SearchTrace trace = null;
+            if (args[1].startsWith("trace:")) {
+                String[] spec = args[1].split(":");
+                trace = SearchTrace.mapped(Paths.get(spec[1]), TRACE_CAPACITY,
+                        spec.length > 2 ? Integer.parseInt(spec[2]) : 1);
+                bt.setTrace(trace);
+            }
 
             // start the clock
             double start = System.currentTimeMillis();
+            long timeout = args.length == 5 ? (long) (Double.parseDouble(args[4]) * 1000) : 0;
+            SolveControl control = new SolveControl(timeout);
+            control.setProgressListener((nodes, depth, elapsed) ->
+                    System.err.println("... " + elapsed/1000 + "s, " + nodes +
+                            " configurations, depth " + depth), PROGRESS_INTERVAL);
+
+            if (engine.equals("count")) {
+                long count = bt.countSolutions(init, Long.MAX_VALUE, control);
+                System.out.println("Elapsed time: " +
+                        (System.currentTimeMillis() - start)/1000.0 + " seconds.");
+                if (control.isStopped()) {
+                    System.out.println("Gave up after " + args[4] + " seconds, with " +
+                            count + " solutions so far.");
+                } else {
+                    System.out.println("Solutions: " + count);
+                }
+                if (stats) {
+                    System.out.println(control.getStats());
+                }
+                closeTrace(trace, args[1]);
+                return;
+            }
 
             // attempt to solve the puzzle
-            Optional<Configuration> sol = bt.solve(init);
+            Optional<Configuration> sol;
+            if (engine.equals("inplace")) {
+                sol = bt.solveInPlace(init, control) ? Optional.of(init) : Optional.empty();
+            } else if (engine.equals("parallel")) {
+                sol = new ParallelBacktracker().solve(init, control);
+            } else if (engine.equals("dlx")) {
+                sol = new DancingLinksSolver().solve(init, control);
+            } else if (engine.equals("profile")) {
+                sol = new ProfileSolver().solve(init, control);
+            } else if (engine.equals("regions")) {
+                sol = new RegionSolver().solve(init, control);
+            } else if (engine.equals("auto")) {
+                sol = new AutoSolver().solve(init, control);
+            } else if (engine.equals("cached")) {
+                sol = solveCached(puzzle, init, control);
+            } else {
+                sol = bt.solve(init, control);
+            }
 
             // compute the elapsed time
             System.out.println("Elapsed time: " +
                     (System.currentTimeMillis() - start)/1000.0 + " seconds.");
 
+            if (stats) {
+                System.out.println(control.getStats());
+            }
+            closeTrace(trace, args[1]);
+
             // indicate whether there was a solution, or not
             if (sol.isPresent()) {
                 System.out.println("Solution:\n" + sol.get());
+            } else if (control.isStopped()) {
+                System.out.println("Gave up after " + args[4] + " seconds.");
             } else {
                 System.out.println("No solution!");
             }
         }
     }
+
+    /**
+     * Solve a safe through the solution cache.
+     *
+     * @param puzzle the safe
+     * @param init its starting config
+     * @param control the handle: deadline, cancellation and progress
+     * @return the solution, or Optional.empty() if there is none or the
+     * search was stopped
+     * @throws IOException if the cache can't be opened
+     */
+    private static Optional<Configuration> solveCached(SafePuzzle puzzle, SafeConfig init,
+                                                       SolveControl control) throws IOException {
+        SolutionCache cache = SolutionCache.openDefault();
+        SolutionCache.Entry cached = cache.lookup(puzzle);
+        if (cached != null) {
+            System.out.println("Found in the cache.");
+            return cached.isSolvable() ? Optional.of(new SafeConfig(cached.getSolution())) : Optional.empty();
+        }
+        Optional<Configuration> sol = new AutoSolver().solve(init, control);
+        if (!control.isStopped()) {
+            cache.store(puzzle, sol.isPresent() ? ((SafeConfig) sol.get()).getBoard() : null);
+        }
+        return sol;
+    }
+
+    /**
+     * Finish a trace, if there is one, and say where it went.
+     *
+     * @param trace the trace, or null
+     * @param spec the debug argument that asked for it
+     * @throws IOException if the trace file can't be written
+     */
+    private static void closeTrace(SearchTrace trace, String spec) throws IOException {
+        if (trace != null) {
+            trace.close();
+            System.out.println("Trace: " + trace.getWritten() + " records in " + spec.split(":")[1]);
+        }
+    }
 }
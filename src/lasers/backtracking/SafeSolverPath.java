@@ -1,22 +1,32 @@
 package lasers.backtracking;
 
-import java.io.FileNotFoundException;
-import java.util.List;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
 
 /**
  * This is the main class for a safe solver with a path.  It runs the
  * backtracking algorithm and displays the full path of the solution,
- * step by step, if one exists.
+ * step by step, if one exists.  An optional third argument gives up
+ * after that many seconds.
+ *
+ * Only the decisions along the path are kept; each step's board is
+ * rebuilt from them as it is printed.  The optional format argument
+ * picks how: "full" (the default) prints the board after every step,
+ * "delta" prints the starting board and then a line per step, and
+ * "binary" writes the delta form as bytes for other programs, with the
+ * messages moved to stderr.  See PathWriter for the formats.
  *
  * @author RIT CS
  */
 public class SafeSolverPath {
-    public static void main(String[] args) throws FileNotFoundException {
-        if (args.length != 2) {
-            System.out.println("Usage: java SafeSolverPath safe.in debug");
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 4) {
+            System.out.println("Usage: java SafeSolverPath safe.in debug [timeout seconds] [full|delta|binary]");
         } else {
             // construct the initial configuration from the file
-            Configuration init = new SafeConfig(args[0]);
+            SafeConfig init = new SafeConfig(args[0]);
 
             // create the backtracker with the debug flag
             boolean debug = args[1].equals("true");
@@ -24,25 +34,28 @@ public class SafeSolverPath {
 
             // start the clock
             double start = System.currentTimeMillis();
+            long timeout = args.length >= 3 ? (long) (Double.parseDouble(args[2]) * 1000) : 0;
+            PathWriter.Format format = args.length == 4 ?
+                    PathWriter.Format.valueOf(args[3].toUpperCase()) : PathWriter.Format.FULL;
+            PrintStream messages = format == PathWriter.Format.BINARY ? System.err : System.out;
+            SolveControl control = new SolveControl(timeout);
 
             // attempt to solve the puzzle
-            List<Configuration> path = bt.solveWithPath(init);
+            DecisionPath path = DecisionPath.solve(bt, init, control);
 
             // compute the elapsed time
-            System.out.println("Elapsed time: " +
+            messages.println("Elapsed time: " +
                     (System.currentTimeMillis() - start)/1000.0 + " seconds.");
 
             // indicate whether there was a solution, or not
             if (path != null) {
-                int step = 0;
-                // loop through the configs from start to end and display them
-                for (Configuration config : path) {
-                    System.out.println("Step " + step + ":");
-                    System.out.println(config);
-                    ++step;
-                }
+                // display the configs from start to end through one buffer
+                System.out.flush();
+                new PathWriter(new FileOutputStream(FileDescriptor.out).getChannel(), format).write(path);
+            } else if (control.isStopped()) {
+                messages.println("Gave up after " + args[2] + " seconds.");
             } else {
-                System.out.println("No solution!");
+                messages.println("No solution!");
             }
         }
     }
@@ -0,0 +1,200 @@
+package lasers.backtracking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A trace of a backtracking search, kept as fixed-size binary records
+ * in a ring buffer that is allocated once, either on the heap or mapped
+ * onto a file.
+ *
+ * Each configuration the search looks at gets the next node id, and one
+ * record in every "sample" of them is written:
+ * <pre>
+ * long  node id
+ * long  id of the node it is a successor of, -1 for the start
+ * int   the tile decided last (row-major), -1 if none or not a safe
+ * byte  LASER if that tile got a laser, EMPTY if not, -1 if unknown
+ * byte  the verdict: ROOT, VALID, INVALID or GOAL
+ * 2 bytes padding
+ * </pre>
+ * Once the ring is full the oldest records are written over, so the
+ * trace always holds the last part of the search.  The file starts with
+ * a header (see TraceDecoder, which turns a trace back into text):
+ * <pre>
+ * 4 bytes "LSRT", int record size, int columns of the safe (0 if
+ * unknown), int sample, long capacity in records, long records written
+ * </pre>
+ *
+ * Writing a record is a few puts into the buffer, so a traced search
+ * runs close to full speed.  A trace is for one thread at a time.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class SearchTrace implements Closeable {
+    /** the first bytes of a trace file */
+    public static final byte[] MAGIC = {'L', 'S', 'R', 'T'};
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 24;
+
+    /** verdicts */
+    public static final byte ROOT = 0;
+    public static final byte VALID = 1;
+    public static final byte INVALID = 2;
+    public static final byte GOAL = 3;
+
+    /** decisions */
+    public static final byte LASER = 1;
+    public static final byte EMPTY = 0;
+
+    /** the header then the ring of records */
+    private final ByteBuffer buffer;
+    private final FileChannel channel;
+    private final long capacity;
+    private final int sample;
+    private int cols;
+    private long nextId;
+    private long written;
+
+    /**
+     * A trace in a buffer of its own.
+     *
+     * @param buffer room for the header and the records
+     * @param channel the file it is mapped onto, or null
+     * @param sample one node in this many is written
+     */
+    private SearchTrace(ByteBuffer buffer, FileChannel channel, int sample) {
+        this.buffer = buffer;
+        this.channel = channel;
+        this.capacity = (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE;
+        this.sample = Math.max(1, sample);
+        writeHeader();
+    }
+
+    /**
+     * A trace on the heap; save writes it to a file.
+     *
+     * @param capacity how many records the ring holds
+     * @param sample one node in this many is written
+     */
+    public SearchTrace(int capacity, int sample) {
+        this(ByteBuffer.allocate(HEADER_SIZE + capacity * RECORD_SIZE), null, sample);
+    }
+
+    /**
+     * A trace mapped onto a file, which is made (or cut) to size.  The
+     * records go straight to the file; close brings its header up to
+     * date.
+     *
+     * @param file the trace file
+     * @param capacity how many records the ring holds, at most about 89
+     * million so the mapping stays under 2 GB
+     * @param sample one node in this many is written
+     * @return the trace
+     * @throws IOException if the file can't be made or mapped
+     */
+    public static SearchTrace mapped(Path file, long capacity, int sample) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + capacity * RECORD_SIZE);
+        return new SearchTrace(buffer, channel, sample);
+    }
+
+    /**
+     * Note a configuration the search looked at.
+     *
+     * @param parent the id of the node it is a successor of, -1 for none
+     * @param config the configuration (or mutable configuration)
+     * @param verdict ROOT, VALID, INVALID or GOAL
+     * @return its node id
+     */
+    long record(long parent, Object config, byte verdict) {
+        long id = this.nextId++;
+        if (id % this.sample != 0) {
+            return id;
+        }
+        int tile = -1;
+        byte decision = -1;
+        if (config instanceof SafeConfig) {
+            SafeConfig safe = (SafeConfig) config;
+            if (this.cols == 0) {
+                this.cols = safe.getSegments().getCols();
+            }
+            tile = safe.getCursor();
+            if (tile >= 0) {
+                decision = safe.isLaser(tile / this.cols, tile % this.cols) ? LASER : EMPTY;
+            }
+        }
+        int at = (int) (HEADER_SIZE + this.written % this.capacity * RECORD_SIZE);
+        this.buffer.putLong(at, id);
+        this.buffer.putLong(at + 8, parent);
+        this.buffer.putInt(at + 16, tile);
+        this.buffer.put(at + 20, decision);
+        this.buffer.put(at + 21, verdict);
+        this.written++;
+        return id;
+    }
+
+    /**
+     * @return how many records have been written, including the ones
+     * since written over
+     */
+    public long getWritten() {
+        return this.written;
+    }
+
+    /**
+     * Write a heap trace to a file.
+     *
+     * @param file the trace file
+     * @throws IOException if it can't be written
+     */
+    public void save(Path file) throws IOException {
+        writeHeader();
+        long records = Math.min(this.written, this.capacity);
+        ByteBuffer all = this.buffer.duplicate();
+        all.position(0).limit(HEADER_SIZE + (int) records * RECORD_SIZE);
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (all.hasRemaining()) {
+                out.write(all);
+            }
+        }
+    }
+
+    /**
+     * Bring the header of a mapped trace up to date and close its file.
+     * Does nothing to a heap trace.
+     *
+     * @throws IOException if the file can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.channel != null) {
+            writeHeader();
+            ((MappedByteBuffer) this.buffer).force();
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Put the header at the front of the buffer.
+     */
+    private void writeHeader() {
+        for (int i = 0; i < MAGIC.length; i++) {
+            this.buffer.put(i, MAGIC[i]);
+        }
+        this.buffer.putInt(4, RECORD_SIZE);
+        this.buffer.putInt(8, this.cols);
+        this.buffer.putInt(12, this.sample);
+        this.buffer.putLong(16, this.capacity);
+        this.buffer.putLong(24, this.written);
+    }
+}
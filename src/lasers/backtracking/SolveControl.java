@@ -0,0 +1,154 @@
+package lasers.backtracking;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A handle on a running solve: it can put a deadline on the search,
+ * cancel it from another thread, and report how it is getting on.
+ *
+ * The engines don't look at the handle on every configuration.  They
+ * count configurations themselves and check in every CHECK_EVERY of
+ * them, so leaving a handle on costs next to nothing.  When a search is
+ * stopped it returns as if there were no solution; isStopped tells the
+ * two apart.  Once the solve returns, getStats tells how it went.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class SolveControl {
+    /** how many configurations an engine looks at between check ins */
+    public static final int CHECK_EVERY = 1024;
+
+    /**
+     * Is told how a solve is getting on.  It is called on the solving
+     * thread, so it should be quick.
+     */
+    public interface ProgressListener {
+        /**
+         * @param nodes how many configurations have been looked at so far
+         * @param depth how deep the search was at the last check in
+         * @param elapsedMillis how long the solve has been running
+         */
+        public void progress(long nodes, int depth, long elapsedMillis);
+    }
+
+    /** when the solve started, and when it has to stop (0 for never) */
+    private final long start;
+    private final long deadline;
+    private final AtomicLong nodes = new AtomicLong();
+    private volatile boolean cancelled;
+    private volatile boolean timedOut;
+    private final SolverStats stats = new SolverStats();
+
+    private ProgressListener listener;
+    private long interval;
+    /** when the listener is next due */
+    private final AtomicLong nextReport = new AtomicLong();
+
+    /**
+     * A handle with no time limit.
+     */
+    public SolveControl() {
+        this(0);
+    }
+
+    /**
+     * A handle whose solve stops after a time limit.  The clock starts
+     * now.
+     *
+     * @param timeoutMillis the time limit, 0 for none
+     */
+    public SolveControl(long timeoutMillis) {
+        this.start = System.nanoTime();
+        this.deadline = timeoutMillis > 0 ? this.start + timeoutMillis * 1_000_000L : 0;
+    }
+
+    /**
+     * Have the solve report how it is getting on.
+     *
+     * @param listener who to tell
+     * @param intervalMillis at least how long between reports
+     */
+    public void setProgressListener(ProgressListener listener, long intervalMillis) {
+        this.interval = intervalMillis * 1_000_000L;
+        this.nextReport.set(System.nanoTime() + this.interval);
+        this.listener = listener;
+    }
+
+    /**
+     * Ask the solve to stop.  It stops at its next check in.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * @return true if cancel was called
+     */
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * @return true if the solve ran out of time
+     */
+    public boolean isTimedOut() {
+        return this.timedOut;
+    }
+
+    /**
+     * @return true if the solve was cut short, so "no solution" from it
+     * doesn't mean there is none
+     */
+    public boolean isStopped() {
+        return this.cancelled || this.timedOut;
+    }
+
+    /**
+     * @return how many configurations have been looked at so far
+     */
+    public long getNodes() {
+        return this.nodes.get();
+    }
+
+    /**
+     * @return what the engines have merged into the stats of this solve
+     * so far; every engine has merged its own by the time it returns
+     */
+    public SolverStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * @return how long since the handle was made, in milliseconds
+     */
+    public long getElapsedMillis() {
+        return (System.nanoTime() - this.start) / 1_000_000L;
+    }
+
+    /**
+     * An engine checks in.
+     *
+     * @param visited how many configurations it looked at since it last
+     * checked in
+     * @param depth how deep its search is now
+     * @return false if the solve has to stop
+     */
+    boolean checkIn(long visited, int depth) {
+        long total = this.nodes.addAndGet(visited);
+        if (this.cancelled || this.timedOut) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (this.deadline != 0 && now - this.deadline >= 0) {
+            this.timedOut = true;
+            return false;
+        }
+        ProgressListener l = this.listener;
+        long due = this.nextReport.get();
+        if (l != null && now - due >= 0 && this.nextReport.compareAndSet(due, now + this.interval)) {
+            l.progress(total, depth, (now - this.start) / 1_000_000L);
+        }
+        return true;
+    }
+}
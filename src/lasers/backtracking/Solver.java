@@ -0,0 +1,36 @@
+package lasers.backtracking;
+
+import java.util.Optional;
+
+/**
+ * A search engine that finds a goal from a starting configuration.
+ * Backtracker works on any Configuration; engines that need to see the
+ * whole safe at once take its starting SafeConfig instead.
+ *
+ * @param <C> the kind of configuration the engine starts from
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public interface Solver<C extends Configuration> {
+    /**
+     * Try find a solution, if one exists, for a given configuration.
+     *
+     * @param config A valid configuration
+     * @return A solution config, or Optional.empty() if no solution
+     */
+    public default Optional<Configuration> solve(C config) {
+        return solve(config, new SolveControl());
+    }
+
+    /**
+     * Try find a solution, if one exists, for a given configuration,
+     * within the limits of a solve handle.
+     *
+     * @param config A valid configuration
+     * @param control the handle: deadline, cancellation and progress
+     * @return A solution config, or Optional.empty() if no solution or
+     * the search was stopped (control.isStopped() tells which)
+     */
+    public Optional<Configuration> solve(C config, SolveControl control);
+}
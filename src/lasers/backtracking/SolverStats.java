@@ -0,0 +1,189 @@
+package lasers.backtracking;
+
+import java.util.Arrays;
+
+/**
+ * How a solve went: how many configurations it visited and generated,
+ * why the ones it threw away were rejected, and how deep it went.
+ *
+ * Each engine counts into a SolverStats of its own (one per thread or
+ * task, so the counting is plain field increments) and merges it into
+ * the stats of the solve handle when it is done.  The backtrackers count
+ * everything; the dancing links and profile engines only count nodes,
+ * successors and depths, since they never make a configuration to
+ * reject.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class SolverStats {
+    /**
+     * Why a configuration was thrown away.
+     */
+    public enum Rejection {
+        /** a new laser can see another one (lasersBuddies) */
+        LINE_OF_SIGHT,
+        /** a pillar has more lasers than its number (checkPillarsTooMany) */
+        PILLAR_OVERFLOW,
+        /** a pillar has too few undecided neighbours left for its number */
+        PILLAR_STARVED,
+        /** every tile is decided but a pillar is short (checkPillars) */
+        GOAL_PILLARS,
+        /** a tile is dark and nothing left can light it (isEmpty) */
+        GOAL_EMPTY,
+        /** a configuration that isn't a safe */
+        OTHER
+    }
+
+    private long nodes;
+    private long successors;
+    private final long[] rejections = new long[Rejection.values().length];
+    private int maxDepth;
+    /** how many nodes were visited at each depth */
+    private long[] depths = new long[64];
+
+    /**
+     * A node was visited.
+     *
+     * @param depth how many moves it is below the start
+     */
+    void visit(int depth) {
+        visit(depth, 1);
+    }
+
+    /**
+     * Some nodes at the same depth were visited.
+     *
+     * @param depth how many moves they are below the start
+     * @param count how many of them
+     */
+    void visit(int depth, long count) {
+        if (depth >= this.depths.length) {
+            this.depths = Arrays.copyOf(this.depths, Math.max(depth + 1, this.depths.length * 2));
+        }
+        this.depths[depth] += count;
+        this.nodes += count;
+        if (depth > this.maxDepth) {
+            this.maxDepth = depth;
+        }
+    }
+
+    /**
+     * Successors were made or applied.
+     *
+     * @param count how many
+     */
+    void generated(long count) {
+        this.successors += count;
+    }
+
+    /**
+     * A configuration was thrown away, either because it was not valid
+     * or because it was a dead end that was not a goal.
+     *
+     * @param config the configuration or mutable configuration, still as
+     * it was rejected
+     */
+    void reject(Object config) {
+        Rejection why = config instanceof SafeConfig ?
+                ((SafeConfig) config).rejection() : Rejection.OTHER;
+        this.rejections[why.ordinal()]++;
+    }
+
+    /**
+     * Add the counts of another stats into these.  Engines call it once
+     * they are done with their own stats, from any thread.
+     *
+     * @param other the stats to add, which nobody else is changing
+     */
+    public synchronized void merge(SolverStats other) {
+        this.nodes += other.nodes;
+        this.successors += other.successors;
+        for (int i = 0; i < this.rejections.length; i++) {
+            this.rejections[i] += other.rejections[i];
+        }
+        if (other.depths.length > this.depths.length) {
+            this.depths = Arrays.copyOf(this.depths, other.depths.length);
+        }
+        for (int d = 0; d <= other.maxDepth; d++) {
+            this.depths[d] += other.depths[d];
+        }
+        this.maxDepth = Math.max(this.maxDepth, other.maxDepth);
+    }
+
+    /**
+     * Start counting again from nothing.
+     */
+    void clear() {
+        this.nodes = 0;
+        this.successors = 0;
+        Arrays.fill(this.rejections, 0);
+        Arrays.fill(this.depths, 0);
+        this.maxDepth = 0;
+    }
+
+    /**
+     * @return how many configurations were visited
+     */
+    public synchronized long getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * @return how many successors were generated
+     */
+    public synchronized long getSuccessors() {
+        return this.successors;
+    }
+
+    /**
+     * @param why a cause
+     * @return how many configurations were thrown away for it
+     */
+    public synchronized long getRejections(Rejection why) {
+        return this.rejections[why.ordinal()];
+    }
+
+    /**
+     * @return the deepest a visited configuration was below the start
+     */
+    public synchronized int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * @return how many configurations were visited at each depth, from
+     * 0 up to getMaxDepth()
+     */
+    public synchronized long[] getDepthHistogram() {
+        return Arrays.copyOf(this.depths, this.maxDepth + 1);
+    }
+
+    /**
+     * The counts, one to a line, then the depth histogram ten depths to
+     * a line.
+     *
+     * @return the stats as a string
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("Nodes visited: ").append(this.nodes).append('\n');
+        result.append("Successors generated: ").append(this.successors).append('\n');
+        for (Rejection why : Rejection.values()) {
+            if (this.rejections[why.ordinal()] > 0) {
+                result.append("Rejected, ").append(why.name().toLowerCase()).append(": ")
+                        .append(this.rejections[why.ordinal()]).append('\n');
+            }
+        }
+        result.append("Max depth: ").append(this.maxDepth).append('\n');
+        result.append("Nodes by depth:");
+        for (int d = 0; d <= this.maxDepth; d++) {
+            if (d % 10 == 0) {
+                result.append('\n').append(String.format("%4d:", d));
+            }
+            result.append(' ').append(this.depths[d]);
+        }
+        return result.toString();
+    }
+}
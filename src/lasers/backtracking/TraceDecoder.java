@@ -0,0 +1,93 @@
+package lasers.backtracking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Turns a SearchTrace file back into a readable trace, oldest record
+ * first, one line per record:
+ * <pre>
+ * #1207 &lt;- #1206: L at (3,4) valid
+ * </pre>
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class TraceDecoder {
+    private static final String[] VERDICTS = {"start", "valid", "invalid", "goal"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: java TraceDecoder search.trace");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            for (int i = 0; i < SearchTrace.MAGIC.length; i++) {
+                if (buffer.get(i) != SearchTrace.MAGIC[i]) {
+                    System.out.println(args[0] + " is not a search trace");
+                    return;
+                }
+            }
+            int recordSize = buffer.getInt(4);
+            int cols = buffer.getInt(8);
+            int sample = buffer.getInt(12);
+            long capacity = buffer.getLong(16);
+            long written = buffer.getLong(24);
+            long records = Math.min(written, capacity);
+            System.out.println(written + " records written, one node in " + sample +
+                    ", the last " + records + " kept");
+
+            // once the ring has wrapped, the oldest record is the next
+            // one that would have been written over
+            long first = written > capacity ? written % capacity : 0;
+            StringBuilder out = new StringBuilder();
+            for (long r = 0; r < records; r++) {
+                int at = (int) (SearchTrace.HEADER_SIZE + (first + r) % capacity * recordSize);
+                out.append(line(buffer, at, cols)).append('\n');
+                if (out.length() > 1 << 16) {
+                    System.out.print(out);
+                    out.setLength(0);
+                }
+            }
+            System.out.print(out);
+        }
+    }
+
+    /**
+     * One record as text.
+     *
+     * @param buffer the trace
+     * @param at where the record starts
+     * @param cols columns of the safe, 0 if unknown
+     * @return the line
+     */
+    private static String line(ByteBuffer buffer, int at, int cols) {
+        long id = buffer.getLong(at);
+        long parent = buffer.getLong(at + 8);
+        int tile = buffer.getInt(at + 16);
+        byte decision = buffer.get(at + 20);
+        byte verdict = buffer.get(at + 21);
+        StringBuilder line = new StringBuilder("#").append(id);
+        if (parent >= 0) {
+            line.append(" <- #").append(parent);
+        }
+        line.append(": ");
+        if (tile >= 0) {
+            line.append(decision == SearchTrace.LASER ? "L" : ".").append(" at ");
+            if (cols > 0) {
+                line.append('(').append(tile / cols).append(',').append(tile % cols).append(')');
+            } else {
+                line.append(tile);
+            }
+            line.append(' ');
+        }
+        line.append(verdict >= 0 && verdict < VERDICTS.length ? VERDICTS[verdict] : "?" + verdict);
+        return line.toString();
+    }
+}
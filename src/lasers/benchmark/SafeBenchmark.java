@@ -0,0 +1,403 @@
+package lasers.benchmark;
+
+import lasers.backtracking.AutoSolver;
+import lasers.backtracking.Backtracker;
+import lasers.backtracking.Configuration;
+import lasers.backtracking.SafeConfig;
+import lasers.backtracking.SolveControl;
+import lasers.model.LasersModel;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Times the solver and the model over every safe in a directory.
+ *
+ * Each benchmark is run on each safe for some warmup iterations, whose
+ * times are thrown away, and then some measured ones.  An iteration
+ * calls the benchmark over and over until it has run for the iteration
+ * time, and notes how many calls it made, how long they took and how
+ * many bytes the thread allocated (where the JVM can tell).  The report
+ * gives, for each benchmark and safe, the throughput, the average time
+ * of a call with its spread over the iterations, and the allocation rate.
+ *
+ * The benchmarks are:
+ * "parse" reads the safe file into a SafeConfig,
+ * "solve" runs Backtracker.solve on it,
+ * "path" runs Backtracker.solveWithPath on it,
+ * "verify" runs LasersModel.verifyBoard on a solved safe (or the
+ * starting one, if it isn't solved within the time limit),
+ * "commands" sends LasersModel.commandProcess a script that adds a laser
+ * on every empty tile, verifies, and removes them all again.
+ *
+ * A solve that takes longer than the time limit is reported as timed
+ * out, and the benchmarks after that one skip the safe.  Files
+ * ending in -input.txt are command scripts for the PTUI, not safes, and
+ * are left out.
+ *
+ * Usage: java lasers.benchmark.SafeBenchmark [options] [safe.in|directory ...]
+ *   -b parse,solve,path,verify,commands   benchmarks to run (all)
+ *   -w n        warmup iterations (3)
+ *   -i n        measured iterations (5)
+ *   -t millis   time of each iteration (1000)
+ *   -limit s    time limit of a single solve, in seconds (10)
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class SafeBenchmark {
+    /** the benchmarks, in the order they run */
+    private static final String[] BENCHMARKS = {"parse", "solve", "path", "verify", "commands"};
+
+    /** where the results go; System.out is silenced while the model runs */
+    private static final PrintStream REPORT = System.out;
+    private static final PrintStream SILENT = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    /** results fold into here so the calls can't be optimized away */
+    private static long sink;
+
+    private int warmups = 3;
+    private int iterations = 5;
+    private long iterationNanos = 1_000_000_000L;
+    private long limitMillis = 10_000;
+
+    /**
+     * One call of a benchmark on one safe.
+     */
+    private interface Call {
+        /**
+         * @return something that depends on the work, for the sink
+         * @throws TimedOut if a solve ran out of time
+         * @throws FileNotFoundException if the safe file went missing
+         */
+        long run() throws TimedOut, FileNotFoundException;
+    }
+
+    /**
+     * A solve ran past the time limit.
+     */
+    private static class TimedOut extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * What the measured iterations of a benchmark on a safe came to.
+     */
+    private static class Result {
+        private final String benchmark;
+        private final String safe;
+        /** nanoseconds per call, one per measured iteration */
+        private final double[] times;
+        private long calls;
+        private long nanos;
+        /** bytes allocated over all the measured calls, -1 if unknown */
+        private long bytes;
+        private boolean timedOut;
+
+        Result(String benchmark, String safe, int iterations) {
+            this.benchmark = benchmark;
+            this.safe = safe;
+            this.times = new double[iterations];
+        }
+    }
+
+    /**
+     * Run the benchmarks.
+     *
+     * @param args options, then safe files or directories of them
+     * @throws FileNotFoundException if a safe file is missing
+     */
+    public static void main(String[] args) throws FileNotFoundException {
+        SafeBenchmark bench = new SafeBenchmark();
+        List<String> benchmarks = Arrays.asList(BENCHMARKS);
+        List<File> safes = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-b":
+                    benchmarks = Arrays.asList(args[++i].split(","));
+                    break;
+                case "-w":
+                    bench.warmups = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    bench.iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-t":
+                    bench.iterationNanos = Long.parseLong(args[++i]) * 1_000_000L;
+                    break;
+                case "-limit":
+                    bench.limitMillis = (long) (Double.parseDouble(args[++i]) * 1000);
+                    break;
+                default:
+                    addSafes(new File(args[i]), safes);
+            }
+        }
+        if (safes.isEmpty()) {
+            addSafes(new File("tests"), safes);
+        }
+        for (String benchmark : benchmarks) {
+            if (!Arrays.asList(BENCHMARKS).contains(benchmark)) {
+                System.out.println("Unknown benchmark: " + benchmark);
+                return;
+            }
+        }
+
+        REPORT.printf("%-9s %-22s %12s %14s %12s %12s%n",
+                "Benchmark", "Safe", "ops/s", "ms/op", "MB/s", "B/op");
+        Set<File> timedOut = new HashSet<>();
+        for (String benchmark : benchmarks) {
+            for (File safe : safes) {
+                if (timedOut.contains(safe)) {
+                    REPORT.printf("%-9s %-22s %s%n", benchmark, safe.getName(), "skipped, timed out before");
+                    continue;
+                }
+                Result result = bench.measure(benchmark, safe);
+                if (result.timedOut) {
+                    timedOut.add(safe);
+                }
+                report(result);
+            }
+        }
+        REPORT.println("(sink " + sink + ")");
+    }
+
+    /**
+     * Add a safe file, or every safe file in a directory in order of size.
+     *
+     * @param file a safe file or a directory
+     * @param safes the list to add to
+     */
+    private static void addSafes(File file, List<File> safes) {
+        if (!file.isDirectory()) {
+            safes.add(file);
+            return;
+        }
+        File[] files = file.listFiles((dir, name) ->
+                name.endsWith(".txt") && !name.endsWith("-input.txt"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.length(), b.length()));
+        safes.addAll(Arrays.asList(files));
+    }
+
+    /**
+     * Warm up and measure one benchmark on one safe.
+     *
+     * @param benchmark the benchmark name
+     * @param safe the safe file
+     * @return what the measured iterations came to
+     * @throws FileNotFoundException if the safe file is missing
+     */
+    private Result measure(String benchmark, File safe) throws FileNotFoundException {
+        Result result = new Result(benchmark, safe.getName(), this.iterations);
+        Call call = prepare(benchmark, safe.getPath());
+        System.setOut(SILENT);
+        try {
+            for (int i = 0; i < this.warmups; i++) {
+                iteration(call, null);
+            }
+            for (int i = 0; i < this.iterations; i++) {
+                result.times[i] = iteration(call, result);
+            }
+        } catch (TimedOut e) {
+            result.timedOut = true;
+        } finally {
+            System.setOut(REPORT);
+        }
+        return result;
+    }
+
+    /**
+     * Call a benchmark over and over for the iteration time.
+     *
+     * @param call the benchmark call
+     * @param result where to add the calls, time and bytes, or null for
+     * a warmup
+     * @return nanoseconds per call over the iteration
+     * @throws TimedOut if a solve ran out of time
+     * @throws FileNotFoundException if the safe file went missing
+     */
+    private double iteration(Call call, Result result) throws TimedOut, FileNotFoundException {
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        long now = start;
+        long calls = 0;
+        while (now - start < this.iterationNanos) {
+            sink += call.run();
+            calls++;
+            now = System.nanoTime();
+        }
+        if (result != null) {
+            result.calls += calls;
+            result.nanos += now - start;
+            long after = allocatedBytes();
+            result.bytes = bytes < 0 || after < 0 || result.bytes < 0 ? -1 : result.bytes + after - bytes;
+        }
+        return (double) (now - start) / calls;
+    }
+
+    /**
+     * @return how many bytes this thread has allocated so far, or -1 if
+     * the JVM can't tell
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Set up a benchmark on a safe, outside of the timing.
+     *
+     * @param benchmark the benchmark name
+     * @param filename the safe file
+     * @return the call to time
+     * @throws FileNotFoundException if the safe file is missing
+     */
+    private Call prepare(String benchmark, String filename) throws FileNotFoundException {
+        if (!new File(filename).isFile()) {
+            throw new FileNotFoundException(filename);
+        }
+        SafeConfig start = new SafeConfig(filename);
+        Backtracker bt = new Backtracker(false);
+        switch (benchmark) {
+            case "parse":
+                return () -> new SafeConfig(filename).hashCode();
+            case "solve":
+                return () -> {
+                    SolveControl control = new SolveControl(this.limitMillis);
+                    Optional<Configuration> sol = bt.solve(start, control);
+                    if (control.isStopped()) {
+                        throw new TimedOut();
+                    }
+                    return sol.isPresent() ? 1 : 0;
+                };
+            case "path":
+                return () -> {
+                    SolveControl control = new SolveControl(this.limitMillis);
+                    List<Configuration> path = bt.solveWithPath(start, control);
+                    if (control.isStopped()) {
+                        throw new TimedOut();
+                    }
+                    return path == null ? 0 : path.size();
+                };
+            case "verify":
+                LasersModel solved = quietModel(filename);
+                Optional<Configuration> sol = new AutoSolver().solve(new SafeConfig(filename),
+                        new SolveControl(this.limitMillis));
+                if (sol.isPresent()) {
+                    solved.showSolution(((SafeConfig) sol.get()).getBoard());
+                }
+                return () -> {
+                    solved.verifyBoard();
+                    return solved.getStatus().length();
+                };
+            default:
+                LasersModel model = quietModel(filename);
+                String[][] script = commandScript(model);
+                return () -> {
+                    model.setDefaultBoard();
+                    for (String[] cmd : script) {
+                        model.commandProcess(cmd);
+                    }
+                    return model.getStatus().length();
+                };
+        }
+    }
+
+    /**
+     * A model of a safe, made with System.out silenced.
+     *
+     * @param filename the safe file
+     * @return the model
+     */
+    private static LasersModel quietModel(String filename) {
+        System.setOut(SILENT);
+        try {
+            return new LasersModel(filename);
+        } finally {
+            System.setOut(REPORT);
+        }
+    }
+
+    /**
+     * The commands of the "commands" benchmark: add a laser on every
+     * empty tile of the starting board, verify, then remove them all.
+     *
+     * @param model the model of the safe
+     * @return the commands, each split as commandProcess takes them
+     */
+    private static String[][] commandScript(LasersModel model) {
+        List<String[]> script = new ArrayList<>();
+        String[][] board = model.getBoard();
+        for (int r = 0; r < model.getROWS(); r++) {
+            for (int c = 0; c < model.getCOLS(); c++) {
+                if (board[r][c].equals(LasersModel.EMPTY)) {
+                    script.add(new String[]{"a", "" + r, "" + c});
+                }
+            }
+        }
+        script.add(new String[]{"v"});
+        int added = script.size() - 1;
+        for (int i = 0; i < added; i++) {
+            String[] add = script.get(i);
+            script.add(new String[]{"r", add[1], add[2]});
+        }
+        return script.toArray(new String[0][]);
+    }
+
+    /**
+     * Print one line of the report.
+     *
+     * @param result what a benchmark on a safe came to
+     */
+    private static void report(Result result) {
+        if (result.timedOut) {
+            REPORT.printf("%-9s %-22s %s%n", result.benchmark, result.safe, "timed out");
+            return;
+        }
+        double mean = 0;
+        for (double t : result.times) {
+            mean += t;
+        }
+        mean /= result.times.length;
+        double spread = 0;
+        for (double t : result.times) {
+            spread += (t - mean) * (t - mean);
+        }
+        spread = result.times.length > 1 ? Math.sqrt(spread / (result.times.length - 1)) : 0;
+        double seconds = result.nanos / 1e9;
+        String ms = String.format("%.4f+-%.4f", mean / 1e6, spread / 1e6);
+        if (result.bytes < 0) {
+            REPORT.printf("%-9s %-22s %12.1f %14s %12s %12s%n", result.benchmark, result.safe,
+                    result.calls / seconds, ms, "?", "?");
+        } else {
+            REPORT.printf("%-9s %-22s %12.1f %14s %12.1f %12d%n", result.benchmark, result.safe,
+                    result.calls / seconds, ms, result.bytes / seconds / (1 << 20),
+                    result.bytes / result.calls);
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package lasers.benchmark;
+
+import lasers.backtracking.Backtracker;
+import lasers.backtracking.CellOrder;
+import lasers.backtracking.Configuration;
+import lasers.backtracking.SafeConfig;
+import lasers.backtracking.SolveControl;
+import lasers.model.LasersModel;
+import lasers.model.SegmentIndex;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Makes random safes with exactly one solution, for load tests.
+ *
+ * A safe is made backwards from its solution: pillars are scattered at
+ * random, lasers are put on random dark tiles until every tile is lit,
+ * and each pillar is numbered with the lasers next to it.  Then the
+ * Backtracker looks for solutions, stopping at the second.  If there is
+ * a second one, a pillar goes on a tile where the two differ, the
+ * tiles it darkens are lit again, and the safe is checked again, until
+ * the solution it was made from is the only one.  (Random safes of any
+ * size almost never have just one solution, so throwing them away and
+ * trying again doesn't get far.)  Last, some of the numbers are taken
+ * off the pillars (they become X), each only if the safe still has one
+ * solution, so not every clue is given away.
+ *
+ * Safe i is made from a random generator seeded by the seed and i, so a
+ * seed always makes the same safes however many threads make them
+ * (unless a check runs out of time).  The safes are made on every core
+ * and written in the format of tests/, with the solution after them:
+ * rowsxcolssafe-gen-i.txt in the output directory.
+ *
+ * Usage: java lasers.benchmark.SafeGenerator [options] rows cols count
+ *   -d fraction   of the tiles that are pillars (0.15)
+ *   -x fraction   of the pillars to try to leave unnumbered (0.25)
+ *   -o directory  where the safes go (.)
+ *   -threads n    how many to make at once (every core)
+ *   -seed n       the seed (the time)
+ *   -limit s      time limit of one check for a second solution, in
+ *                 seconds (10)
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class SafeGenerator {
+    /** how many times to try for safe i before giving up on it */
+    private static final int MAX_ATTEMPTS = 100;
+    /** what ambiguity finds when there is no second solution, or no telling */
+    private static final int UNIQUE = -1;
+    private static final int GAVE_UP = -2;
+
+    private int rows;
+    private int cols;
+    private double density = 0.15;
+    private double unnumbered = 0.25;
+    private Path dir = Paths.get(".");
+    private long seed = System.currentTimeMillis();
+    private long limitMillis = 10_000;
+
+    /** how many safes were rejected for having more than one solution, or taking too long */
+    private final AtomicLong rejected = new AtomicLong();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        SafeGenerator gen = new SafeGenerator();
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> rest = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-d":
+                        gen.density = Double.parseDouble(args[++i]);
+                        break;
+                    case "-x":
+                        gen.unnumbered = Double.parseDouble(args[++i]);
+                        break;
+                    case "-o":
+                        gen.dir = Paths.get(args[++i]);
+                        break;
+                    case "-threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "-seed":
+                        gen.seed = Long.parseLong(args[++i]);
+                        break;
+                    case "-limit":
+                        gen.limitMillis = (long) (Double.parseDouble(args[++i]) * 1000);
+                        break;
+                    default:
+                        rest.add(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            rest.clear();
+        }
+        if (rest.size() != 3) {
+            System.out.println("Usage: java lasers.benchmark.SafeGenerator [-d fraction] [-x fraction] " +
+                    "[-o directory] [-threads n] [-seed n] [-limit s] rows cols count");
+            return;
+        }
+        gen.rows = Integer.parseInt(rest.get(0));
+        gen.cols = Integer.parseInt(rest.get(1));
+        int count = Integer.parseInt(rest.get(2));
+        Files.createDirectories(gen.dir);
+
+        long start = System.currentTimeMillis();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger made = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(pool.submit(() -> {
+                // each worker takes the next safe to make until there are none left
+                for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                    Path file = gen.make(i);
+                    if (file != null) {
+                        made.incrementAndGet();
+                        System.out.println(file);
+                    }
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("a worker failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        System.out.println(made + " of " + count + " safes made in " +
+                (System.currentTimeMillis() - start) / 1000.0 + " seconds (" + gen.rejected +
+                " rejected on the way).");
+    }
+
+    /**
+     * Make safe i and write it out.
+     *
+     * @param i which safe
+     * @return its file, or null if no safe with one solution turned up
+     */
+    private Path make(int i) {
+        Random random = new Random(this.seed * 1_000_003L + i);
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            String[][] solution = solution(random);
+            String[][] safe = null;
+            // each round puts a pillar where another solution differs, until there is no other
+            for (int round = 0; round <= this.rows * this.cols && safe == null; round++) {
+                String[][] clued = clues(solution);
+                int tile = ambiguity(clued, solution, random);
+                if (tile == UNIQUE) {
+                    safe = clued;
+                } else if (tile == GAVE_UP) {
+                    break;
+                } else {
+                    solution[tile / this.cols][tile % this.cols] = LasersModel.FREE_PILLAR;
+                    fill(solution, random);
+                }
+            }
+            if (safe == null) {
+                this.rejected.incrementAndGet();
+                continue;
+            }
+            unnumber(safe, random);
+            for (int r = 0; r < this.rows; r++) {
+                for (int c = 0; c < this.cols; c++) {
+                    if (safe[r][c].equals(LasersModel.FREE_PILLAR)) {
+                        solution[r][c] = LasersModel.FREE_PILLAR;
+                    }
+                }
+            }
+            Path file = this.dir.resolve(String.format("%dx%dsafe-gen-%04d.txt", this.rows, this.cols, i));
+            try {
+                Files.write(file, format(safe, solution).getBytes(StandardCharsets.US_ASCII));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return file;
+        }
+        return null;
+    }
+
+    /**
+     * A random solved board: pillars scattered over it, then lit by fill.
+     *
+     * @param random where the randomness comes from
+     * @return the board, with X for every pillar
+     */
+    private String[][] solution(Random random) {
+        String[][] board = new String[this.rows][this.cols];
+        for (int r = 0; r < this.rows; r++) {
+            for (int c = 0; c < this.cols; c++) {
+                board[r][c] = random.nextDouble() < this.density ? LasersModel.FREE_PILLAR : LasersModel.EMPTY;
+            }
+        }
+        fill(board, random);
+        return board;
+    }
+
+    /**
+     * Light a board: keep the lasers on it, put more on random dark tiles
+     * until none are left, and draw the beams.  No laser can see another,
+     * because a laser only goes where no laser shines yet, and a new
+     * pillar only blocks beams.
+     *
+     * @param board pillars, lasers and anything else, changed in place
+     * @param random where the randomness comes from
+     */
+    private void fill(String[][] board, Random random) {
+        SegmentIndex segments = new SegmentIndex(board);
+        boolean[] litHorizontal = new boolean[segments.getHorizontalCount()];
+        boolean[] litVertical = new boolean[segments.getVerticalCount()];
+        List<Integer> dark = new ArrayList<>();
+        for (int index = 0; index < this.rows * this.cols; index++) {
+            if (segments.isPillar(index)) {
+                continue;
+            }
+            if (board[index / this.cols][index % this.cols].equals(LasersModel.LASER)) {
+                litHorizontal[segments.getHorizontal(index)] = true;
+                litVertical[segments.getVertical(index)] = true;
+            } else {
+                dark.add(index);
+            }
+        }
+        // try the tiles in a random order, putting a laser on each still dark
+        for (int k = dark.size() - 1; k >= 0; k--) {
+            int pick = random.nextInt(k + 1);
+            int index = dark.get(pick);
+            dark.set(pick, dark.get(k));
+            int h = segments.getHorizontal(index);
+            int v = segments.getVertical(index);
+            if (!litHorizontal[h] && !litVertical[v]) {
+                board[index / this.cols][index % this.cols] = LasersModel.LASER;
+                litHorizontal[h] = true;
+                litVertical[v] = true;
+            } else {
+                board[index / this.cols][index % this.cols] = LasersModel.BEAM;
+            }
+        }
+    }
+
+    /**
+     * The safe of a solved board: every pillar numbered with the lasers
+     * next to it, and every other tile empty.  The pillars of the board
+     * are numbered too.
+     *
+     * @param solution the solved board
+     * @return the safe
+     */
+    private String[][] clues(String[][] solution) {
+        String[][] safe = new String[this.rows][this.cols];
+        for (int r = 0; r < this.rows; r++) {
+            for (int c = 0; c < this.cols; c++) {
+                if (SegmentIndex.isPillar(solution[r][c])) {
+                    int lasers = 0;
+                    lasers += isLaser(solution, r - 1, c) + isLaser(solution, r + 1, c);
+                    lasers += isLaser(solution, r, c - 1) + isLaser(solution, r, c + 1);
+                    safe[r][c] = String.valueOf(lasers);
+                    solution[r][c] = safe[r][c];
+                } else {
+                    safe[r][c] = LasersModel.EMPTY;
+                }
+            }
+        }
+        return safe;
+    }
+
+    /**
+     * Look for a second solution of a safe, stopping there, and pick a
+     * tile where it differs from the one the safe was made from.  A tile
+     * that is a beam in ours is picked before one of our lasers, so
+     * fewer tiles need lighting again once it is a pillar.
+     *
+     * @param safe the safe
+     * @param solution the solution it was made from
+     * @param random where the randomness comes from
+     * @return the row-major index of the tile, UNIQUE if there is no
+     * other solution, or GAVE_UP if the search ran out of time
+     */
+    private int ambiguity(String[][] safe, String[][] solution, Random random) {
+        SolveControl control = new SolveControl(this.limitMillis);
+        List<Configuration> found = new Backtracker(false).solutions(new SafeConfig(safe, CellOrder.PILLAR_SLACK), control)
+                .limit(2).collect(Collectors.toList());
+        if (control.isStopped() || found.isEmpty()) {
+            return GAVE_UP;
+        }
+        for (Configuration config : found) {
+            String[][] other = ((SafeConfig) config).getBoard();
+            List<Integer> beams = new ArrayList<>();
+            List<Integer> lasers = new ArrayList<>();
+            for (int index = 0; index < this.rows * this.cols; index++) {
+                String ours = solution[index / this.cols][index % this.cols];
+                if (!ours.equals(other[index / this.cols][index % this.cols])) {
+                    (ours.equals(LasersModel.BEAM) ? beams : lasers).add(index);
+                }
+            }
+            List<Integer> pick = beams.isEmpty() ? lasers : beams;
+            if (!pick.isEmpty()) {
+                return pick.get(random.nextInt(pick.size()));
+            }
+        }
+        return UNIQUE;
+    }
+
+    /**
+     * @return 1 if there is a laser at (r, c), 0 if not or it's off the board
+     */
+    private int isLaser(String[][] board, int r, int c) {
+        return r >= 0 && r < this.rows && c >= 0 && c < this.cols && board[r][c].equals(LasersModel.LASER) ? 1 : 0;
+    }
+
+    /**
+     * Take the numbers off some pillars, one at a time in a random order,
+     * keeping each change only if the safe still has one solution.
+     *
+     * @param safe the safe, changed in place
+     * @param random where the randomness comes from
+     */
+    private void unnumber(String[][] safe, Random random) {
+        List<Integer> pillars = new ArrayList<>();
+        for (int index = 0; index < this.rows * this.cols; index++) {
+            if (!safe[index / this.cols][index % this.cols].equals(LasersModel.EMPTY)) {
+                pillars.add(index);
+            }
+        }
+        int goal = (int) (pillars.size() * this.unnumbered);
+        for (int k = pillars.size() - 1, done = 0; k >= 0 && done < goal; k--) {
+            int pick = random.nextInt(k + 1);
+            int index = pillars.get(pick);
+            pillars.set(pick, pillars.get(k));
+            int r = index / this.cols;
+            int c = index % this.cols;
+            String number = safe[r][c];
+            safe[r][c] = LasersModel.FREE_PILLAR;
+            if (isUnique(safe)) {
+                done++;
+            } else {
+                safe[r][c] = number;
+            }
+        }
+    }
+
+    /**
+     * Does a safe have exactly one solution?  The search stops at the
+     * second one.
+     *
+     * @param safe the safe
+     * @return true if it has one, false if it has more, none, or the
+     * check ran out of time
+     */
+    private boolean isUnique(String[][] safe) {
+        SolveControl control = new SolveControl(this.limitMillis);
+        long solutions = new Backtracker(false).countSolutions(new SafeConfig(safe, CellOrder.PILLAR_SLACK), 2, control);
+        return solutions == 1 && !control.isStopped();
+    }
+
+    /**
+     * A safe as tests/ has them: the size, the tiles, then the solution.
+     *
+     * @param safe the safe
+     * @param solution its solution
+     * @return the text of the file
+     */
+    private String format(String[][] safe, String[][] solution) {
+        StringBuilder text = new StringBuilder();
+        text.append(this.rows).append(' ').append(this.cols).append("\r\n");
+        for (String[] row : safe) {
+            text.append(String.join(" ", row)).append("\r\n");
+        }
+        text.append("\r\nA ").append(this.rows).append('x').append(this.cols)
+                .append(" puzzle with a solution:\r\n\r\n ");
+        for (int c = 0; c < this.cols; c++) {
+            text.append(' ').append(c % 10);
+        }
+        text.append("\r\n  ");
+        for (int c = 0; c < 2 * this.cols - 1; c++) {
+            text.append('-');
+        }
+        text.append("\r\n");
+        for (int r = 0; r < this.rows; r++) {
+            text.append(r % 10).append('|').append(String.join(" ", solution[r])).append("\r\n");
+        }
+        return text.toString();
+    }
+}
@@ -17,6 +17,7 @@ import java.io.FileNotFoundException;
 import java.util.List;
 
 import javafx.stage.Window;
+import lasers.backtracking.SolveControl;
 import lasers.model.*;
 import lasers.ptui.ControllerPTUI;
 
@@ -44,6 +45,14 @@ public class LasersGUI extends Application implements Observer<LasersModel, Mode
     private String filename;
     private Button lastButton = new Button();
     private Button lastButton2 = new Button();
+    /**
+     * the solve running in the background, or null if there is none
+     */
+    private SolveControl solving;
+    /**
+     * the solve button, which reads Cancel while solving
+     */
+    private Button solveButton;
 
     /**
      * A private utility function for setting the background of a button to
@@ -165,6 +174,7 @@ public class LasersGUI extends Application implements Observer<LasersModel, Mode
      */
     private void restartBoard()
     {
+        stopSolving();
         this.model.setDefaultBoard();
         for (int rows = 0; rows < this.model.getROWS(); rows++) {
             for (int cols = 0; cols < this.model.getCOLS(); cols++) {
@@ -204,6 +214,7 @@ public class LasersGUI extends Application implements Observer<LasersModel, Mode
      */
     private void load(Stage stage)
     {
+        stopSolving();
         try {
             String fileName = fileChooser(stage);
             if(!fileName.equals(" ")) {
@@ -239,7 +250,8 @@ public class LasersGUI extends Application implements Observer<LasersModel, Mode
         Button check =  new Button("Check");
         check.setOnAction(actionEvent -> this.model.verifyBoard());
         Button solve = new Button("Solve");
-        solve.setOnAction(actionEvent -> solutionGridPane());
+        solve.setOnAction(actionEvent -> solutionGridPane(solve));
+        this.solveButton = solve;
         Button restart = new Button("Restart");
         restart.setOnAction(actionEvent -> restartBoard());
         Button load = new Button("Load");
@@ -252,22 +264,66 @@ public class LasersGUI extends Application implements Observer<LasersModel, Mode
     }
 
     /**
-     * solves the current safe
+     * solves the current safe on a background thread, or cancels the
+     * solve if one is already running
+     * @param solve the solve button, which reads Cancel while solving
      */
-    public void solutionGridPane()
+    public void solutionGridPane(Button solve)
     {
+        if(this.solving != null) {
+            this.solving.cancel();
+            return;
+        }
         BorderPane labels = (BorderPane) this.borderPane.getTop();
         Label status = (Label) labels.getCenter();
         status.setText("Calculating solution...");
-        boolean solution = this.model.getSolution();
-        if(solution){
-            GridPane sol = makeGridPane();
-            this.borderPane.setCenter(sol);
-            status.setText(this.filename + " solved!");
-        } else {
-            status.setText(this.filename + " has no solution!");
-        }
+        solve.setText("Cancel");
+        SolveControl control = new SolveControl(LasersModel.SOLVE_TIME_LIMIT);
+        control.setProgressListener((nodes, depth, elapsed) -> Platform.runLater(() -> {
+            if(this.solving == control) {
+                status.setText("Calculating solution... " + elapsed / 1000 + "s, " +
+                        nodes + " tried");
+            }
+        }), 250);
+        this.solving = control;
+        Thread thread = new Thread(() -> {
+            String[][] sol = this.model.getFromSolve(control);
+            Platform.runLater(() -> {
+                if(this.solving != control) {
+                    // restarted or loaded while solving
+                    return;
+                }
+                this.solving = null;
+                solve.setText("Solve");
+                if(sol != null){
+                    this.model.showSolution(sol);
+                    this.borderPane.setCenter(makeGridPane());
+                    status.setText(this.filename + " solved!");
+                } else if(control.isCancelled()) {
+                    status.setText("Solve cancelled");
+                } else if(control.isTimedOut()) {
+                    status.setText("Gave up on " + this.filename + " after " +
+                            LasersModel.SOLVE_TIME_LIMIT / 1000 + " seconds");
+                } else {
+                    status.setText(this.filename + " has no solution!");
+                }
+            });
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
 
+    /**
+     * cancels the background solve, if there is one, and puts the solve
+     * button back to Solve at once
+     */
+    private void stopSolving()
+    {
+        if(this.solving != null) {
+            this.solving.cancel();
+            this.solving = null;
+            this.solveButton.setText("Solve");
+        }
     }
 
     /**
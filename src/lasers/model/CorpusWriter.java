@@ -0,0 +1,121 @@
+package lasers.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Appends safes to a SafeCorpus file.  Run on its own, it converts safe
+ * files in the text format of tests/ into a corpus:
+ *
+ * Usage: java lasers.model.CorpusWriter corpus.lsc [safe.in|directory ...]
+ *
+ * A directory gives its .txt files, leaving out the -input.txt command
+ * scripts of the PTUI.  A new corpus is made just big enough for the
+ * largest of the safes; safes are added to the end of an old one.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class CorpusWriter extends RecordWriter {
+    /**
+     * Open a corpus to add safes to, making it if it isn't there.
+     *
+     * @param file the corpus file
+     * @param maxRows the most rows a safe may have, if the corpus is new
+     * @param maxCols the most columns a safe may have, if the corpus is new
+     * @throws IOException if it can't be opened, or isn't a corpus
+     */
+    public CorpusWriter(Path file, int maxRows, int maxCols) throws IOException {
+        super(file, SafeCorpus.MAGIC, maxRows, maxCols, 0);
+    }
+
+    /**
+     * Add a safe to the end of the corpus.
+     *
+     * @param puzzle the safe
+     * @return its index in the corpus
+     * @throws IOException if the corpus can't be written
+     * @throws IllegalArgumentException if the safe is too big for it
+     */
+    public long add(SafePuzzle puzzle) throws IOException {
+        String[][] tiles = puzzle.getTiles();
+        checkFits(tiles);
+        SafeCorpus.pack(next(), tiles, packedBytes());
+        return getCount() - 1;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java lasers.model.CorpusWriter corpus.lsc [safe.in|directory ...]");
+            return;
+        }
+        List<Path> safes = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            addSafes(new File(args[i]), safes);
+        }
+        int[] size = largest(safes);
+        long start = System.currentTimeMillis();
+        try (CorpusWriter out = new CorpusWriter(Paths.get(args[0]), size[0], size[1])) {
+            for (Path safe : safes) {
+                out.add(SafePuzzle.read(safe.toString()));
+            }
+            System.out.println(safes.size() + " safes added to " + args[0] + ", which has " +
+                    out.getCount() + " of up to " + out.maxRows + "x" + out.maxCols + ", in " +
+                    (System.currentTimeMillis() - start) / 1000.0 + " seconds.");
+        }
+    }
+
+    /**
+     * The most rows and columns of some safe files, to size a new corpus
+     * or solutions file.  Only the first line of each file is read, and
+     * a file that doesn't start with the rows and columns is passed over.
+     *
+     * @param safes the safe files
+     * @return the most rows and the most columns, at least 1 each
+     * @throws IOException if a file can't be read
+     */
+    public static int[] largest(List<Path> safes) throws IOException {
+        int[] size = {1, 1};
+        for (Path safe : safes) {
+            try (BufferedReader in = Files.newBufferedReader(safe, StandardCharsets.US_ASCII)) {
+                String line = in.readLine();
+                String[] dims = line == null ? new String[0] : line.trim().split("\\s+");
+                if (dims.length >= 2 && dims[0].matches("\\d+") && dims[1].matches("\\d+")) {
+                    size[0] = Math.max(size[0], Integer.parseInt(dims[0]));
+                    size[1] = Math.max(size[1], Integer.parseInt(dims[1]));
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Add a safe file, or the safe files in a directory, to a list.
+     *
+     * @param file a safe file or directory
+     * @param safes the list
+     */
+    private static void addSafes(File file, List<Path> safes) {
+        if (!file.isDirectory()) {
+            safes.add(file.toPath());
+            return;
+        }
+        File[] files = file.listFiles((dir, name) ->
+                name.endsWith(".txt") && !name.endsWith("-input.txt"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File safe : files) {
+            safes.add(safe.toPath());
+        }
+    }
+}
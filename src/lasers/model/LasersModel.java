@@ -1,12 +1,15 @@
 package lasers.model;
 
-import lasers.backtracking.Backtracker;
+import lasers.backtracking.AutoSolver;
 import lasers.backtracking.Configuration;
 import lasers.backtracking.SafeConfig;
+import lasers.backtracking.SolveControl;
 import lasers.ptui.LasersPTUI;
 
-import java.io.File;
+import java.io.BufferedReader;
 import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
 import java.io.ObjectInputFilter;
 import java.util.*;
 
@@ -28,14 +31,23 @@ public class LasersModel {
     public final static String TWO = "2"; // 2 adjacent lasers pillar
     public final static String THREE = "3"; // 3 adjacent lasers pillar
     public final static String FOUR = "4"; // 4 adjacent lasers pillar
-    public static HashSet<String> pillars;
-    public static HashSet<String> lasers;
+    public final static long SOLVE_TIME_LIMIT = 30_000; // longest a solve may run, in ms
+    public final static String VERIFIED = "This safe is fully verified!"; // status of a safe that verifies
 
 
     private int ROWS;
     private int COLS;
     private String[][] board;
     private String[][] defaultBoard;
+    /** the safe as read from its file, shared with the solver */
+    private SafePuzzle puzzle;
+    /** the line of sight segments of the safe, shared with the solver */
+    private SegmentIndex segments;
+    /** how many lasers are in each horizontal and vertical segment */
+    private int[] horizontalLasers;
+    private int[] verticalLasers;
+    /** where the lasers are, a bit per tile in row-major order */
+    private long[] lasers;
     private Scanner in;
     private String fileName;
     /**
@@ -43,20 +55,16 @@ public class LasersModel {
      */
     private List<Observer<LasersModel, ModelData>> observers;
     private String status;
+    /** solutions found before, or null to always solve; see setCache */
+    private SolutionCache cache;
+    /** true if the model shouldn't print its messages */
+    private boolean quiet;
 
     public LasersModel(String filename) {
         this.fileName = filename;
         try {
             this.observers = new LinkedList<>();
-            pillars = new HashSet<>();
-            lasers = new HashSet<>();
             createBoard(filename);
-            pillars.add(FREE_PILLAR);
-            pillars.add(ZERO);
-            pillars.add(ONE);
-            pillars.add(TWO);
-            pillars.add(THREE);
-            pillars.add(FOUR);
         } catch (FileNotFoundException fnfe) {
             fnfe.getMessage();
             System.out.println(filename + " The system cannot find the file specified");
@@ -70,24 +78,66 @@ public class LasersModel {
      * @throws FileNotFoundException error
      */
     public void createBoard(String fileName) throws FileNotFoundException {
-        this.in = new Scanner(new File(fileName));
+        this.puzzle = SafePuzzle.read(fileName);
         this.status = fileName + " loaded";
-        String line = in.nextLine();
-        String[] dims = line.split(" ");
-        this.ROWS = Integer.parseInt(dims[0]);
-        this.COLS = Integer.parseInt(dims[1]);
-        this.board = new String[ROWS][COLS];
-        this.defaultBoard = new String[ROWS][COLS];
-        for (int i = 0; i < this.ROWS; i++) {
-            line = in.nextLine();
-            String[] tiles = line.split(" ");
-            for (int j = 0; j < this.COLS; j++) {
-                this.board[i][j] = tiles[j];
-                this.defaultBoard[i][j] = tiles[j];
+        this.ROWS = this.puzzle.getRows();
+        this.COLS = this.puzzle.getCols();
+        this.board = this.puzzle.getTiles();
+        this.defaultBoard = this.puzzle.getTiles();
+        this.segments = this.puzzle.getSegments();
+        countLasers();
+    }
+
+    /**
+     * recounts the lasers in every segment from the board
+     */
+    private void countLasers() {
+        this.horizontalLasers = new int[this.segments.getHorizontalCount()];
+        this.verticalLasers = new int[this.segments.getVerticalCount()];
+        this.lasers = new long[(this.ROWS * this.COLS + 63) >>> 6];
+        for (int r = 0; r < this.ROWS; r++) {
+            for (int c = 0; c < this.COLS; c++) {
+                if (this.board[r][c].equals(LASER)) {
+                    setLaser(r * this.COLS + c, true);
+                    this.horizontalLasers[this.segments.getHorizontal(r * this.COLS + c)]++;
+                    this.verticalLasers[this.segments.getVertical(r * this.COLS + c)]++;
+                }
             }
         }
     }
 
+    /**
+     * is there a laser on this tile?
+     * @param index row-major index of the tile
+     * @return true if there is
+     */
+    private boolean isLaser(int index) {
+        return (this.lasers[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * puts or takes away the laser of a tile
+     * @param index row-major index of the tile
+     * @param laser true to put one there
+     */
+    private void setLaser(int index, boolean laser) {
+        if (laser) {
+            this.lasers[index >>> 6] |= 1L << index;
+        } else {
+            this.lasers[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * is a beam (or a laser) on this tile?
+     * @param index row-major index of a non-pillar tile
+     * @return true if either segment of the tile has a laser
+     */
+    private boolean isLit(int index) {
+        return this.horizontalLasers[this.segments.getHorizontal(index)] > 0 ||
+                this.verticalLasers[this.segments.getVertical(index)] > 0;
+    }
+
     /**
      * Sets to beginning board
      */
@@ -97,6 +147,7 @@ public class LasersModel {
             reset[i] = Arrays.copyOf(this.defaultBoard[i], getCOLS());
         }
         this.board = reset;
+        countLasers();
     }
 
     /**
@@ -106,16 +157,14 @@ public class LasersModel {
      * @param fileName filename of the file with inputs
      */
     public void fileRead(String fileName) {
-        File inputs = new File(fileName);
-        try {
-            this.in = new Scanner(inputs);
-            while (in.hasNextLine()) {
-                String msg = in.nextLine();
+        try (BufferedReader inputs = new BufferedReader(new FileReader(fileName))) {
+            String msg;
+            while ((msg = inputs.readLine()) != null) {
                 System.out.println(msg);
                 String[] cmd = msg.split(" ");
                 commandProcess(cmd);
             }
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
@@ -123,27 +172,29 @@ public class LasersModel {
     /**
      * Reads commands to execute respective methods to make action happen
      * @param cmd command and coordinates if required.
+     * @return false if the command was wrong or couldn't be done
      */
-    public void commandProcess(String[] cmd) {
+    public boolean commandProcess(String[] cmd) {
         switch (cmd[0]) {
             case "add":
             case "a":
                 if (cmd.length != 3) {
-                    System.out.println("Incorrect coordinates");
+                    say("Incorrect coordinates");
+                    return false;
                 } else if (Integer.parseInt(cmd[1]) > this.ROWS ||
                         Integer.parseInt(cmd[2]) > this.COLS) {
-                    System.out.println("Error adding laser at: (" + cmd[1] + ", " + cmd[2] + ")");
+                    say("Error adding laser at: (" + cmd[1] + ", " + cmd[2] + ")");
+                    return false;
                 } else {
-                    addTile(Integer.parseInt(cmd[1]), Integer.parseInt(cmd[2]), LASER);
+                    return addTile(Integer.parseInt(cmd[1]), Integer.parseInt(cmd[2]), LASER);
                 }
-                break;
             case "display":
             case "d":
-                System.out.println(this.toString());
+                say(this.toString());
                 break;
             case "help":
             case "h":
-                System.out.println("a|add r c: Add laser to (r,c)\n" +
+                say("a|add r c: Add laser to (r,c)\n" +
                         "d|display: Display safe\n" +
                         "h|help: Print this help message\n" +
                         "q|quit: Exit program\n" +
@@ -157,26 +208,28 @@ public class LasersModel {
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
-                return;
+                return true;
             case "remove":
             case "r":
                 if (cmd.length != 3) {
-                    System.out.println("Incorrect coordinates");
+                    say("Incorrect coordinates");
+                    return false;
                 } else if (Integer.parseInt(cmd[1]) > this.ROWS ||
                         Integer.parseInt(cmd[2]) > this.COLS) {
-                    System.out.println("Error removing laser at: (" + cmd[1] + ", " + cmd[2] + ")");
+                    say("Error removing laser at: (" + cmd[1] + ", " + cmd[2] + ")");
+                    return false;
                 } else {
-                    removeTile(Integer.parseInt(cmd[1]), Integer.parseInt(cmd[2]), EMPTY);
+                    return removeTile(Integer.parseInt(cmd[1]), Integer.parseInt(cmd[2]), EMPTY);
                 }
-                break;
             case "verify":
             case "v":
                 verifyBoard();
                 break;
             default:
-                System.out.println("Unrecognized command: " + cmd[0]);
-                break;
+                say("Unrecognized command: " + cmd[0]);
+                return false;
         }
+        return true;
     }
 
     /**
@@ -235,29 +288,63 @@ public class LasersModel {
         return this.status;
     }
 
+    /**
+     * Does the model keep its messages to itself?
+     * @return true if it prints nothing
+     */
+    public boolean isQuiet() {
+        return this.quiet;
+    }
+
+    /**
+     * Stops or starts the messages the model prints.  The status and the
+     * observers still get every change.
+     * @param quiet true to print nothing
+     */
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    /**
+     * prints a message, unless the model is quiet
+     * @param message the message
+     */
+    private void say(String message) {
+        if (!this.quiet) {
+            System.out.println(message);
+        }
+    }
+
     /**
      * changes a value in the safe
      *
      * @param row row coordinate
      * @param col column coordinate
      * @param val value changed to
+     * @return true if the laser was added
      */
-    public void addTile(int row, int col, String val) {
-        if ((row < 0 || row > getROWS()) || (col < 0 || col > getCOLS())) {
+    public boolean addTile(int row, int col, String val) {
+        if ((row < 0 || row >= getROWS()) || (col < 0 || col >= getCOLS())) {
             this.status = "Invalid coordinates: (" + row + ", " + col + ")";
-            System.out.println("Invalid coordinates: (" + row + ", " + col + ")");
+            say(this.status);
             notifyObservers(new ModelData(row, col, null));
-        } else if (pillars.contains(this.board[row][col])) {
+            return false;
+        } else if (this.segments.isPillar(row * this.COLS + col)) {
             this.status = "Error adding laser at: (" + row + ", " + col + ")";
-            System.out.println("Error adding laser at: (" + row + ", " + col + ")");
+            say(this.status);
             notifyObservers(new ModelData(row, col, null));
+            return false;
         } else {
+            if (!isLaser(row * this.COLS + col)) {
+                this.horizontalLasers[this.segments.getHorizontal(row * this.COLS + col)]++;
+                this.verticalLasers[this.segments.getVertical(row * this.COLS + col)]++;
+            }
             this.board[row][col] = val;
             this.status = "Laser added at: (" + row + ", " + col + ")";
-            lasers.add(row + " " + col);
+            setLaser(row * this.COLS + col, true);
             makeBeam(row, col);
             notifyObservers(new ModelData(row, col, LASER));
-
+            return true;
         }
     }
 
@@ -267,22 +354,28 @@ public class LasersModel {
      * @param row row coordinate
      * @param col column coordinate
      * @param val value changed to
+     * @return true if the laser was removed
      */
-    public void removeTile(int row, int col, String val) {
-        if ((row < 0 || row > getROWS()) || (col < 0 || col > getCOLS())) {
+    public boolean removeTile(int row, int col, String val) {
+        if ((row < 0 || row >= getROWS()) || (col < 0 || col >= getCOLS())) {
             this.status = "Invalid coordinates: (" + row + ", " + col + ")";
-            System.out.println("Invalid coordinates: (" + row + ", " + col + ")");
+            say(this.status);
             notifyObservers(new ModelData(row, col, LASER));
-        } else if (!this.board[row][col].equals(LASER)) {
+            return false;
+        } else if (!isLaser(row * this.COLS + col)) {
             this.status = "Error removing laser at: (" + row + ", " + col + ")";
-            System.out.println("Error removing laser at: (" + row + ", " + col + ")");
+            say(this.status);
             notifyObservers(new ModelData(row, col, LASER));
+            return false;
         } else {
             this.board[row][col] = val;
             this.status = "Laser removed at: (" + row + ", " + col + ")";
-            lasers.remove(row + " " + col);
+            setLaser(row * this.COLS + col, false);
+            this.horizontalLasers[this.segments.getHorizontal(row * this.COLS + col)]--;
+            this.verticalLasers[this.segments.getVertical(row * this.COLS + col)]--;
             killBeam(row, col);
             notifyObservers(new ModelData(row, col, EMPTY));
+            return true;
         }
     }
 
@@ -307,15 +400,10 @@ public class LasersModel {
      * @param col col coordinate
      */
     public void makeBeamRight(int row, int col) {
-        //build beam right
-        for (int i = col; i < this.COLS; i++) {
-            if (this.board[row][i].equals(EMPTY)) {
-                this.board[row][i] = BEAM;
-                notifyObservers(new ModelData(row, i, BEAM));
-            }
-            if (pillars.contains(this.board[row][i])) {
-                break;
-            }
+        //build beam right, to the end of the laser's segment
+        int end = this.segments.getHorizontalEnd(this.segments.getHorizontal(row * this.COLS + col));
+        for (int i = row * this.COLS + col; i <= end; i++) {
+            lightTile(i);
         }
     }
 
@@ -327,14 +415,9 @@ public class LasersModel {
      */
     public void makeBeamDown(int row, int col) {
         //build beam down
-        for (int j = row; j < this.ROWS; j++) {
-            if (this.board[j][col].equals(EMPTY)) {
-                this.board[j][col] = BEAM;
-                notifyObservers(new ModelData(j, col, BEAM));
-            }
-            if (pillars.contains(this.board[j][col])) {
-                break;
-            }
+        int end = this.segments.getVerticalEnd(this.segments.getVertical(row * this.COLS + col));
+        for (int j = row * this.COLS + col; j <= end; j += this.COLS) {
+            lightTile(j);
         }
     }
 
@@ -346,14 +429,9 @@ public class LasersModel {
      */
     public void makeBeamLeft(int row, int col) {
         //build beam left
-        for (int k = col; k >= 0; k--) {
-            if (this.board[row][k].equals(EMPTY)) {
-                this.board[row][k] = BEAM;
-                notifyObservers(new ModelData(row, k, BEAM));
-            }
-            if (pillars.contains(this.board[row][k])) {
-                break;
-            }
+        int start = this.segments.getHorizontalStart(this.segments.getHorizontal(row * this.COLS + col));
+        for (int k = row * this.COLS + col; k >= start; k--) {
+            lightTile(k);
         }
     }
 
@@ -365,73 +443,59 @@ public class LasersModel {
      */
     public void makeBeamUp(int row, int col) {
         //build beam up
-        for (int l = row; l >= 0; l--) {
-            if (this.board[l][col].equals(EMPTY)) {
-                this.board[l][col] = BEAM;
-                notifyObservers(new ModelData(l, col, BEAM));
-            }
-            if (pillars.contains(this.board[l][col])) {
-                break;
-            }
+        int start = this.segments.getVerticalStart(this.segments.getVertical(row * this.COLS + col));
+        for (int l = row * this.COLS + col; l >= start; l -= this.COLS) {
+            lightTile(l);
         }
+    }
 
+    /**
+     * turns an empty tile into a beam
+     *
+     * @param index row-major index of the tile
+     */
+    private void lightTile(int index) {
+        int row = index / this.COLS;
+        int col = index % this.COLS;
+        if (this.board[row][col].equals(EMPTY)) {
+            this.board[row][col] = BEAM;
+            notifyObservers(new ModelData(row, col, BEAM));
+        }
     }
 
     /**
-     * removes the beam of the laser in all directions
+     * removes the beam of the laser in all directions.  Tiles that another
+     * laser still lights keep their beam.
      *
      * @param row row that the laser is being removed at
      * @param col col laser being removed at
      */
     public void killBeam(int row, int col) {
-        for (int i = col; i < this.COLS; i++) {
-            if (this.board[row][i].equals(BEAM)) {
-                this.board[row][i] = EMPTY;
-                notifyObservers(new ModelData(row, i, EMPTY, true));
-            }
-            if (pillars.contains(this.board[row][i])) {
-                break;
-            }
+        int h = this.segments.getHorizontal(row * this.COLS + col);
+        int v = this.segments.getVertical(row * this.COLS + col);
+        for (int i = this.segments.getHorizontalStart(h); i <= this.segments.getHorizontalEnd(h); i++) {
+            dimTile(i);
         }
-        for (int j = row; j < this.ROWS; j++) {
-            if (this.board[j][col].equals(BEAM)) {
-                this.board[j][col] = EMPTY;
-                notifyObservers(new ModelData(j, col, EMPTY, true));
-            }
-            if (pillars.contains(this.board[j][col])) {
-                break;
-            }
+        for (int j = this.segments.getVerticalStart(v); j <= this.segments.getVerticalEnd(v); j += this.COLS) {
+            dimTile(j);
         }
-        //build beam left
-        for (int k = col; k >= 0; k--) {
-            if (this.board[row][k].equals(BEAM)) {
-                this.board[row][k] = EMPTY;
-                notifyObservers(new ModelData(row, k, EMPTY, true));
-            }
-            if (pillars.contains(this.board[row][k])) {
-                break;
-            }
-        }
-        //build beam up
-        for (int l = row; l >= 0; l--) {
-            if (this.board[l][col].equals(BEAM)) {
-                this.board[l][col] = EMPTY;
-                notifyObservers(new ModelData(l, col, EMPTY, true));
-            }
-            if (pillars.contains(this.board[l][col])) {
-                break;
-            }
-        }
-        updateLasers();
     }
 
     /**
-     * reads the beams for all the current lasers
+     * sets a beam or empty tile to whatever the lasers left on the board say
+     *
+     * @param index row-major index of the tile
      */
-    public void updateLasers() {
-        for (String s : lasers) {
-            String[] coords = s.split(" ");
-            makeBeam(Integer.parseInt(coords[0]), Integer.parseInt(coords[1]));
+    private void dimTile(int index) {
+        int row = index / this.COLS;
+        int col = index % this.COLS;
+        String tile = this.board[row][col];
+        if (tile.equals(BEAM) && !isLit(index)) {
+            this.board[row][col] = EMPTY;
+            notifyObservers(new ModelData(row, col, EMPTY, true));
+        } else if (tile.equals(EMPTY) && isLit(index)) {
+            this.board[row][col] = BEAM;
+            notifyObservers(new ModelData(row, col, BEAM));
         }
     }
 
@@ -502,55 +566,52 @@ public class LasersModel {
      * @return false if invalid lasers facing each other
      */
     public boolean checkLasersBuddies(int row, int col) {
-        //check the right of the laser
-        for (int i = col + 1; i < this.COLS; i++) {
-            if (this.board[row][i].equals(LASER)) {
-                this.status = "Error verifying at: (" + i + " , " + row + ")";
-                System.out.println("Error verifying at: (" + i + " , " + row + ")");
-                notifyObservers(new ModelData(row, col, "error"));
-                return false;
-            }
-            if (pillars.contains(this.board[row][i])) {
-                break;
-            }
+        int index = row * this.COLS + col;
+        //another laser in the same horizontal segment
+        int h = this.segments.getHorizontal(index);
+        if (this.horizontalLasers[h] > 1) {
+            int other = findOtherLaser(index, this.segments.getHorizontalStart(h),
+                    this.segments.getHorizontalEnd(h), 1);
+            this.status = "Error verifying at: (" + other % this.COLS + " , " + row + ")";
+            say(this.status);
+            notifyObservers(new ModelData(row, col, "error"));
+            return false;
         }
-        //check under laser
-        for (int j = row + 1; j < this.ROWS; j++) {
-            if (this.board[j][col].equals(LASER)) {
-                this.status = "Error verifying at: (" + col + ", " + j + ")";
-                System.out.println("Error verifying at: (" + col + ", " + j + ")");
-                notifyObservers(new ModelData(row, col, "error"));
-                return false;
-            }
-            if (pillars.contains(this.board[j][col])) {
-                break;
-            }
+        //another laser in the same vertical segment
+        int v = this.segments.getVertical(index);
+        if (this.verticalLasers[v] > 1) {
+            int other = findOtherLaser(index, this.segments.getVerticalStart(v),
+                    this.segments.getVerticalEnd(v), this.COLS);
+            this.status = "Error verifying at: (" + col + ", " + other / this.COLS + ")";
+            say(this.status);
+            notifyObservers(new ModelData(row, col, "error"));
+            return false;
         }
-        //check the left of the laser
-        for (int k = col - 1; k >= 0; k--) {
-            if (this.board[row][k].equals(LASER)) {
-                this.status = "Error verifying at: (" + k + " , " + row + ")";
-                System.out.println("Error verifying at: (" + k + " , " + row + ")");
-                notifyObservers(new ModelData(row, col, "error"));
-                return false;
-            }
-            if (pillars.contains(this.board[row][k])) {
-                break;
+        return true;
+    }
+
+    /**
+     * finds the nearest other laser in a segment, looking after the given
+     * tile first and then before it
+     *
+     * @param index the laser being checked
+     * @param start first tile of the segment
+     * @param end last tile of the segment
+     * @param step distance between tiles of the segment
+     * @return index of the other laser, -1 if there is none
+     */
+    private int findOtherLaser(int index, int start, int end, int step) {
+        for (int i = index + step; i <= end; i += step) {
+            if (isLaser(i)) {
+                return i;
             }
         }
-        //check above laser
-        for (int l = row - 1; l >= 0; l--) {
-            if (this.board[l][col].equals(LASER)) {
-                this.status = "Error verifying at: (" + col + ", " + l + ")";
-                System.out.println("Error verifying at: (" + col + ", " + l + ")");
-                notifyObservers(new ModelData(row, col, "error"));
-                return false;
-            }
-            if (pillars.contains(this.board[l][col])) {
-                break;
+        for (int i = index - step; i >= start; i -= step) {
+            if (isLaser(i)) {
+                return i;
             }
         }
-        return true;
+        return -1;
     }
 
 
@@ -597,7 +658,7 @@ public class LasersModel {
         }
         if (count != num) {
             this.status = "Error verifying at: (" + col + " , " + row + ")";
-            System.out.println("Error verifying at: (" + col + " , " + row + ")");
+            say(this.status);
             noError = false;
             notifyObservers(new ModelData(row, col, "error"));
         }
@@ -613,7 +674,7 @@ public class LasersModel {
             for(int c = 0; c < this.COLS; c++){
                 if(this.board[r][c].equals(EMPTY)){
                     this.status = "Error verifying at: (" + c + " , " + r + ")";
-                    System.out.println("Error verifying at: (" + c + " , " + r + ")");
+                    say(this.status);
                     notifyObservers(new ModelData(r, c, "errorEmpty"));
                     return true;
                 }
@@ -628,53 +689,85 @@ public class LasersModel {
      * laserValid checks if the laser is placed at a valid location (next to a pillar)
      * pillarCheck will check if there's enough lasers next to it
      * successfully valid board will print a message
+     * @return true if the safe is fully verified
      */
-    public void verifyBoard() {
+    public boolean verifyBoard() {
         boolean noLasersFacing; //true  = continue
         boolean pillarLasersAmount; //true = continue
         for (int r = 0; r < getROWS(); r++) {
             for (int c = 0; c < getCOLS(); c++) {
-                if (getBoard()[r][c].equals(LASER)) {
+                if (isLaser(r * this.COLS + c)) {
                     noLasersFacing = checkLasersBuddies(r, c);
                     if (!noLasersFacing) {
-                        return;
+                        return false;
                     }
 
                 }
-                if (pillars.contains(getBoard()[r][c])) {
+                if (this.segments.isPillar(r * this.COLS + c)) {
                     pillarLasersAmount = checkPillars(r, c);
                     if (!pillarLasersAmount) {
-                        return;
+                        return false;
                     }
                 }
             }
         }
         if(this.isEmpty()){
-            return;
+            return false;
         } else {
-            this.status = "This safe is fully verified!";
-            System.out.println("This safe is fully verified!");
+            this.status = VERIFIED;
+            say(this.status);
+            return true;
         }
     }
 
     /**
-     * Runs solve to find a solution and returns it as a board.
+     * @return the safe as read from its file
+     */
+    public SafePuzzle getPuzzle() {
+        return this.puzzle;
+    }
+
+    /**
+     * Runs solve to find a solution and returns it as a board.  It gives
+     * up after SOLVE_TIME_LIMIT.
      * @return Solution board
      */
     public String[][] getFromSolve(){
-        SafeConfig start = null;
-        try {
-            start = new SafeConfig(this.fileName);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
-        Backtracker b = new Backtracker(false);
-        Optional<Configuration> solution = b.solve(start);
-        if(solution.isEmpty())
-        {
-            return null;
-        }
-        return ((SafeConfig)solution.get()).getBoard();
+        return getFromSolve(new SolveControl(SOLVE_TIME_LIMIT));
+    }
+
+    /**
+     * Runs solve to find a solution and returns it as a board, unless the
+     * model has a solution cache that already knows it.  It only reads the
+     * starting board, so it can run off the UI thread.
+     * @param control deadline, cancellation and progress of the solve
+     * @return Solution board, or null if there is none or the solve was
+     * stopped
+     */
+    public String[][] getFromSolve(SolveControl control){
+        SolutionCache cache = this.cache;
+        SolutionCache.Entry cached = cache == null ? null : cache.lookup(this.puzzle);
+        if (cached != null) {
+            return cached.getSolution();
+        }
+        SafeConfig start = new SafeConfig(this.puzzle);
+        Optional<Configuration> sol = new AutoSolver().solve(start, control);
+        String[][] board = sol.isPresent() ? ((SafeConfig) sol.get()).getBoard() : null;
+        if (cache != null && !control.isStopped()) {
+            cache.store(this.puzzle, board);
+        }
+        return board;
+    }
+
+    /**
+     * Lets getFromSolve look solutions up in a cache, and remember the
+     * ones it finds.  A model has none unless it is given one, so solving
+     * doesn't touch the disk.
+     * @param cache the cache, which may be shared with other models, or
+     * null to always solve
+     */
+    public void setCache(SolutionCache cache) {
+        this.cache = cache;
     }
 
     /**
@@ -683,15 +776,40 @@ public class LasersModel {
      */
     public boolean getSolution()
     {
-        String[][] sol = getFromSolve();
+        return getSolution(new SolveControl(SOLVE_TIME_LIMIT));
+    }
+
+    /**
+     * Gets the solution board, if it exists, within the limits of a
+     * solve handle.
+     * @param control deadline, cancellation and progress of the solve
+     * @return returns true if solution was found, false otherwise.
+     */
+    public boolean getSolution(SolveControl control)
+    {
+        String[][] sol = getFromSolve(control);
         if(sol == null)
         {
+            if(control.isTimedOut()) {
+                this.status = "Gave up after " + control.getElapsedMillis() / 1000 + " seconds";
+            } else if(control.isCancelled()) {
+                this.status = "Solve cancelled";
+            }
             return false;
         }
-        else {
-            this.board = sol;
-            return true;
-        }
+        return showSolution(sol);
+    }
+
+    /**
+     * Puts a solution board from getFromSolve on the safe.
+     * @param sol the solution board
+     * @return true
+     */
+    public boolean showSolution(String[][] sol)
+    {
+        this.board = sol;
+        countLasers();
+        return true;
     }
 
     /**
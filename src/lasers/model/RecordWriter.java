@@ -0,0 +1,136 @@
+package lasers.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends fixed-width records to a file with a SafeCorpus style header,
+ * through one buffer.  A new file gets the header; an old one has its
+ * header checked and is added to after its last whole record.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+abstract class RecordWriter implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    protected final int maxRows;
+    protected final int maxCols;
+    protected final int recordSize;
+    /** how many records the file has, with the ones still in the buffer */
+    private long count;
+
+    /**
+     * Open a file of records to add to.
+     *
+     * @param file the file
+     * @param magic the first bytes of its kind of file
+     * @param maxRows the most rows a safe may have, if the file is new
+     * @param maxCols the most columns a safe may have, if the file is new
+     * @param extra how many bytes a record has besides the packed safe
+     * @throws IOException if it can't be opened, or is the wrong kind of file
+     */
+    RecordWriter(Path file, byte[] magic, int maxRows, int maxCols, int extra) throws IOException {
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (exists) {
+            ByteBuffer header = SafeCorpus.readHeader(this.channel, magic, file);
+            this.maxRows = header.getInt(8);
+            this.maxCols = header.getInt(12);
+            this.recordSize = header.getInt(16);
+            if (this.recordSize != SafeCorpus.recordSize(this.maxRows, this.maxCols) + extra) {
+                throw new IOException(file + " has records of the wrong size");
+            }
+        } else {
+            if (maxRows < 1 || maxRows > 255 || maxCols < 1 || maxCols > 255) {
+                throw new IllegalArgumentException("safes have to be 1 to 255 tiles a side");
+            }
+            this.maxRows = maxRows;
+            this.maxCols = maxCols;
+            this.recordSize = SafeCorpus.recordSize(maxRows, maxCols) + extra;
+            ByteBuffer header = SafeCorpus.header(magic, maxRows, maxCols, this.recordSize);
+            while (header.hasRemaining()) {
+                this.channel.write(header, header.position());
+            }
+        }
+        // a record cut short by a crash is written over
+        this.count = (this.channel.size() - SafeCorpus.HEADER_SIZE) / this.recordSize;
+        this.channel.position(SafeCorpus.HEADER_SIZE + this.count * this.recordSize);
+        this.buffer = ByteBuffer.allocate(Math.max(1 << 16, this.recordSize));
+    }
+
+    /**
+     * @return how many records there are, counting the ones not yet
+     * flushed
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Make room for the next record in the buffer.
+     *
+     * @return the buffer to put the record in
+     * @throws IOException if the buffer had to be flushed and couldn't be
+     */
+    protected ByteBuffer next() throws IOException {
+        if (this.buffer.remaining() < this.recordSize) {
+            flush();
+        }
+        this.count++;
+        return this.buffer;
+    }
+
+    /**
+     * Check that a board fits in a record.
+     *
+     * @param board the board
+     * @throws IllegalArgumentException if it's too big
+     */
+    protected void checkFits(String[][] board) {
+        if (board.length > this.maxRows || board.length > 0 && board[0].length > this.maxCols) {
+            throw new IllegalArgumentException("a safe of " + board.length + "x" + board[0].length +
+                    " is bigger than " + this.maxRows + "x" + this.maxCols);
+        }
+    }
+
+    /**
+     * @return how many bytes of packed tiles a record has
+     */
+    protected int packedBytes() {
+        return SafeCorpus.recordSize(this.maxRows, this.maxCols) - 2;
+    }
+
+    /**
+     * Write out the records in the buffer.
+     *
+     * @throws IOException if they can't be written
+     */
+    public void flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * Flush and close the file.
+     *
+     * @throws IOException if it can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package lasers.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Many safes packed into one binary file, read straight from a mapping
+ * of it.
+ *
+ * The file is a header then one fixed-width record per safe.  Numbers
+ * are big endian:
+ * <pre>
+ * 4 bytes  "LSRC"
+ * int      version, 1
+ * int      the most rows a safe may have
+ * int      the most columns a safe may have
+ * int      the size of a record
+ * 12 bytes zero
+ * </pre>
+ * and each record is:
+ * <pre>
+ * byte     rows, unsigned
+ * byte     cols, unsigned
+ * bytes    the tiles in row-major order, two to a byte, the first in
+ *          the high four bits; the rest of the record is zero
+ * </pre>
+ * A tile is coded in four bits as its index in TILES.  Every record has
+ * room for the largest safe, so the i'th safe is at a known place and
+ * there is nothing to parse.  The number of safes is worked out from the
+ * size of the file, so CorpusWriter only ever appends.
+ *
+ * The tiles are read with absolute gets on the mapping, so one corpus
+ * can be read from any number of threads at once.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class SafeCorpus implements Closeable, Iterable<SafePuzzle> {
+    /** the first bytes of a corpus file */
+    public static final byte[] MAGIC = {'L', 'S', 'R', 'C'};
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    /** the tiles, by their four bit code */
+    public static final String[] TILES = {
+            LasersModel.EMPTY, LasersModel.LASER, LasersModel.BEAM, LasersModel.FREE_PILLAR,
+            LasersModel.ZERO, LasersModel.ONE, LasersModel.TWO, LasersModel.THREE, LasersModel.FOUR
+    };
+    /** at most this many bytes of records go in one mapping */
+    private static final int CHUNK_BYTES = 1 << 30;
+
+    private final FileChannel channel;
+    private final int maxRows;
+    private final int maxCols;
+    private final int recordSize;
+    private final int size;
+    /** the records, in mappings of recordsPerChunk each */
+    private final MappedByteBuffer[] chunks;
+    private final int recordsPerChunk;
+
+    /**
+     * Map a corpus file.
+     *
+     * @param file the corpus file
+     * @throws IOException if it can't be read or isn't a corpus
+     */
+    public SafeCorpus(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer header = readHeader(this.channel, MAGIC, file);
+        this.maxRows = header.getInt(8);
+        this.maxCols = header.getInt(12);
+        this.recordSize = header.getInt(16);
+        if (this.recordSize != recordSize(this.maxRows, this.maxCols)) {
+            throw new IOException(file + " has records of the wrong size");
+        }
+        long records = (this.channel.size() - HEADER_SIZE) / this.recordSize;
+        if (records > Integer.MAX_VALUE) {
+            throw new IOException(file + " has too many safes");
+        }
+        this.size = (int) records;
+        this.recordsPerChunk = CHUNK_BYTES / this.recordSize;
+        this.chunks = new MappedByteBuffer[(this.size + this.recordsPerChunk - 1) / this.recordsPerChunk];
+        for (int i = 0; i < this.chunks.length; i++) {
+            long first = (long) i * this.recordsPerChunk;
+            long count = Math.min(this.recordsPerChunk, this.size - first);
+            this.chunks[i] = this.channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE + first * this.recordSize, count * this.recordSize);
+        }
+    }
+
+    /**
+     * Does a file start like a corpus?
+     *
+     * @param file a file
+     * @return true if it starts with MAGIC
+     */
+    public static boolean isCorpus(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+            while (magic.hasRemaining() && in.read(magic) >= 0) {
+                // read until the magic is in or the file ends
+            }
+            return !magic.hasRemaining() && magic.flip().equals(ByteBuffer.wrap(MAGIC));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return how many safes there are
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public int getMaxRows() {
+        return this.maxRows;
+    }
+
+    public int getMaxCols() {
+        return this.maxCols;
+    }
+
+    /**
+     * @param index a safe, from 0
+     * @return its rows
+     */
+    public int getRows(int index) {
+        return chunk(index).get(offset(index)) & 0xff;
+    }
+
+    /**
+     * @param index a safe, from 0
+     * @return its columns
+     */
+    public int getCols(int index) {
+        return chunk(index).get(offset(index) + 1) & 0xff;
+    }
+
+    /**
+     * @param index a safe, from 0
+     * @param row row coordinate
+     * @param col column coordinate
+     * @return the tile there
+     */
+    public String getTile(int index, int row, int col) {
+        return TILES[code(chunk(index), offset(index) + 2, row * getCols(index) + col)];
+    }
+
+    /**
+     * Unpack a safe.
+     *
+     * @param index a safe, from 0
+     * @return the safe
+     */
+    public SafePuzzle get(int index) {
+        ByteBuffer records = chunk(index);
+        int at = offset(index);
+        int rows = records.get(at) & 0xff;
+        int cols = records.get(at + 1) & 0xff;
+        String[][] tiles = new String[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                tiles[r][c] = TILES[code(records, at + 2, r * cols + c)];
+            }
+        }
+        return new SafePuzzle(tiles);
+    }
+
+    /**
+     * @return the safes, in order
+     */
+    @Override
+    public Iterator<SafePuzzle> iterator() {
+        return new Iterator<SafePuzzle>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < SafeCorpus.this.size;
+            }
+
+            @Override
+            public SafePuzzle next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(this.next++);
+            }
+        };
+    }
+
+    /**
+     * Close the file.  The mappings stay readable until they are
+     * collected.
+     *
+     * @throws IOException if the file can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * @param index a safe, from 0
+     * @return the mapping its record is in
+     */
+    private ByteBuffer chunk(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("no safe " + index + " in a corpus of " + this.size);
+        }
+        return this.chunks[index / this.recordsPerChunk];
+    }
+
+    /**
+     * @param index a safe, from 0
+     * @return where its record starts in its mapping
+     */
+    private int offset(int index) {
+        return index % this.recordsPerChunk * this.recordSize;
+    }
+
+    /**
+     * @param maxRows the most rows a safe may have
+     * @param maxCols the most columns a safe may have
+     * @return the size of a safe's record
+     */
+    static int recordSize(int maxRows, int maxCols) {
+        return 2 + (maxRows * maxCols + 1) / 2;
+    }
+
+    /**
+     * @param tile a tile
+     * @return its four bit code
+     * @throws IllegalArgumentException if it isn't a tile of a safe
+     */
+    static int code(String tile) {
+        for (int i = 0; i < TILES.length; i++) {
+            if (TILES[i].equals(tile)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("no code for the tile " + tile);
+    }
+
+    /**
+     * @param bytes some packed tiles
+     * @param at where they start
+     * @param tile which tile
+     * @return its four bit code
+     */
+    private static int code(ByteBuffer bytes, int at, int tile) {
+        int b = bytes.get(at + tile / 2);
+        return (tile % 2 == 0 ? b >> 4 : b) & 0xf;
+    }
+
+    /**
+     * Put a board's dimensions and packed tiles into a buffer.
+     *
+     * @param out where to put them; it has room for packedBytes + 2
+     * @param board the board
+     * @param packedBytes how many bytes of tiles a record has
+     */
+    static void pack(ByteBuffer out, String[][] board, int packedBytes) {
+        int rows = board.length;
+        int cols = rows == 0 ? 0 : board[0].length;
+        out.put((byte) rows);
+        out.put((byte) cols);
+        int high = -1;
+        int written = 0;
+        for (String[] row : board) {
+            for (String tile : row) {
+                if (high < 0) {
+                    high = code(tile);
+                } else {
+                    out.put((byte) (high << 4 | code(tile)));
+                    high = -1;
+                    written++;
+                }
+            }
+        }
+        if (high >= 0) {
+            out.put((byte) (high << 4));
+            written++;
+        }
+        for (; written < packedBytes; written++) {
+            out.put((byte) 0);
+        }
+    }
+
+    /**
+     * Make the header of a corpus or solutions file.
+     *
+     * @param magic its first four bytes
+     * @param maxRows the most rows a safe may have
+     * @param maxCols the most columns a safe may have
+     * @param recordSize the size of a record
+     * @return the header, ready to write
+     */
+    static ByteBuffer header(byte[] magic, int maxRows, int maxCols, int recordSize) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(magic).putInt(VERSION).putInt(maxRows).putInt(maxCols).putInt(recordSize);
+        header.clear();
+        return header;
+    }
+
+    /**
+     * Read and check the header of a corpus or solutions file.
+     *
+     * @param channel the open file
+     * @param magic the four bytes it should start with
+     * @param file the file, for the errors
+     * @return the header
+     * @throws IOException if it can't be read or is the wrong kind of file
+     */
+    static ByteBuffer readHeader(FileChannel channel, byte[] magic, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // read until the header is in or the file ends
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE ||
+                !ByteBuffer.wrap(header.array(), 0, magic.length).equals(ByteBuffer.wrap(magic))) {
+            throw new IOException(file + " isn't a " + new String(magic, StandardCharsets.US_ASCII) + " file");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException(file + " is version " + header.getInt(4) + ", not " + VERSION);
+        }
+        return header;
+    }
+}
@@ -0,0 +1,218 @@
+package lasers.model;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The definition of a safe as read from its file: its tiles and its line
+ * of sight segments.  It never changes, so one puzzle is shared by the
+ * model, every solver config made from it, and any thread.
+ *
+ * A safe file is the number of rows and columns on the first line, then
+ * one line per row with the tiles separated by spaces.  The file is read
+ * through one channel into a buffer and parsed byte by byte; tiles of
+ * one character share a String each.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class SafePuzzle {
+    /** the String of every one-character tile, by its character */
+    private static final String[] TILES = new String[128];
+
+    static {
+        for (char c = '!'; c < 127; c++) {
+            TILES[c] = String.valueOf(c).intern();
+        }
+    }
+
+    private final String[][] tiles;
+    private final SegmentIndex segments;
+
+    /**
+     * A puzzle from its tiles.
+     *
+     * @param tiles the tiles, one string each; they are copied
+     */
+    public SafePuzzle(String[][] tiles) {
+        this.tiles = copy(tiles);
+        this.segments = new SegmentIndex(this.tiles);
+    }
+
+    /**
+     * Read a safe file.
+     *
+     * @param filename the safe file
+     * @return the puzzle
+     * @throws FileNotFoundException if the file can't be opened
+     */
+    public static SafePuzzle read(String filename) throws FileNotFoundException {
+        try (FileInputStream in = new FileInputStream(filename)) {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the whole file is in
+            }
+            buffer.flip();
+            return parse(buffer);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(filename, e);
+        }
+    }
+
+    /**
+     * Parse a safe from the bytes of a safe file.
+     *
+     * @param bytes the file, from its position to its limit
+     * @return the puzzle
+     * @throws IllegalArgumentException if the bytes aren't a safe
+     */
+    public static SafePuzzle parse(ByteBuffer bytes) {
+        Parser parser = new Parser(bytes);
+        int rows = parser.number();
+        int cols = parser.number();
+        parser.endLine();
+        String[][] tiles = new String[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                tiles[r][c] = parser.tile(r);
+            }
+            parser.endLine();
+        }
+        return new SafePuzzle(tiles);
+    }
+
+    public int getRows() {
+        return this.segments.getRows();
+    }
+
+    public int getCols() {
+        return this.segments.getCols();
+    }
+
+    /**
+     * @param row row coordinate
+     * @param col column coordinate
+     * @return the tile there at the start
+     */
+    public String getTile(int row, int col) {
+        return this.tiles[row][col];
+    }
+
+    /**
+     * @return a copy of the starting tiles, for a board to change
+     */
+    public String[][] getTiles() {
+        return copy(this.tiles);
+    }
+
+    /**
+     * @param tiles some tiles
+     * @return a copy of them, row by row
+     */
+    private static String[][] copy(String[][] tiles) {
+        String[][] copy = new String[tiles.length][];
+        for (int r = 0; r < tiles.length; r++) {
+            copy[r] = tiles[r].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * @return the line of sight segments of the safe
+     */
+    public SegmentIndex getSegments() {
+        return this.segments;
+    }
+
+    /**
+     * Reads the numbers and tiles of a safe file out of a buffer.
+     */
+    private static class Parser {
+        private final ByteBuffer bytes;
+
+        Parser(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Skip spaces, but not the end of the line.
+         */
+        private void skipSpaces() {
+            while (this.bytes.hasRemaining()) {
+                byte b = this.bytes.get(this.bytes.position());
+                if (b != ' ' && b != '\t' && b != '\r') {
+                    return;
+                }
+                this.bytes.get();
+            }
+        }
+
+        /**
+         * @return the next number on the line
+         */
+        int number() {
+            skipSpaces();
+            int value = 0;
+            int digits = 0;
+            while (this.bytes.hasRemaining()) {
+                byte b = this.bytes.get(this.bytes.position());
+                if (b < '0' || b > '9') {
+                    break;
+                }
+                value = value * 10 + (b - '0');
+                digits++;
+                this.bytes.get();
+            }
+            if (digits == 0) {
+                throw new IllegalArgumentException("expected the rows and columns of the safe");
+            }
+            return value;
+        }
+
+        /**
+         * @param row the row being read, for the error
+         * @return the next tile on the line
+         */
+        String tile(int row) {
+            skipSpaces();
+            int start = this.bytes.position();
+            while (this.bytes.hasRemaining()) {
+                byte b = this.bytes.get(this.bytes.position());
+                if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                    break;
+                }
+                this.bytes.get();
+            }
+            int length = this.bytes.position() - start;
+            if (length == 0) {
+                throw new IllegalArgumentException("row " + row + " of the safe is short");
+            }
+            byte first = this.bytes.get(start);
+            if (length == 1 && first > 0 && TILES[first] != null) {
+                return TILES[first];
+            }
+            byte[] text = new byte[length];
+            for (int i = 0; i < length; i++) {
+                text[i] = this.bytes.get(start + i);
+            }
+            return new String(text, StandardCharsets.US_ASCII);
+        }
+
+        /**
+         * Skip the rest of the line, including its end.
+         */
+        void endLine() {
+            while (this.bytes.hasRemaining() && this.bytes.get() != '\n') {
+                // anything after the tiles of a row is ignored
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package lasers.model;
+
+import java.util.Arrays;
+
+/**
+ * The line of sight topology of a safe, built once when the safe is
+ * loaded.  Pillars cut every row into horizontal segments and every
+ * column into vertical segments.  A laser lights exactly the two
+ * segments it sits in, and two lasers can see each other exactly when
+ * they share a segment, so both questions become a lookup of a segment
+ * id instead of a walk along the ray.
+ *
+ * Tiles are numbered in row-major order.  A horizontal segment is a run
+ * of consecutive tile indices; a vertical segment is a run of indices
+ * that step by the number of columns.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class SegmentIndex {
+    /** the dimensions of the safe */
+    private final int rows;
+    private final int cols;
+    /** the horizontal segment of each tile, -1 for a pillar */
+    private final int[] horizontal;
+    /** the vertical segment of each tile, -1 for a pillar */
+    private final int[] vertical;
+    /** the first and last tile of each horizontal segment */
+    private final int[] horizontalStart;
+    private final int[] horizontalEnd;
+    /** the first (top) and last (bottom) tile of each vertical segment */
+    private final int[] verticalStart;
+    private final int[] verticalEnd;
+
+    /**
+     * Build the index for a safe.
+     *
+     * @param board the tiles of the safe; only where the pillars are matters
+     */
+    public SegmentIndex(String[][] board) {
+        this.rows = board.length;
+        this.cols = this.rows == 0 ? 0 : board[0].length;
+        int cells = this.rows * this.cols;
+        this.horizontal = new int[cells];
+        this.vertical = new int[cells];
+        int[] hStart = new int[cells];
+        int[] hEnd = new int[cells];
+        int[] vStart = new int[cells];
+        int[] vEnd = new int[cells];
+
+        // horizontal runs, row by row
+        int count = 0;
+        for (int r = 0; r < this.rows; r++) {
+            boolean open = false;
+            for (int c = 0; c < this.cols; c++) {
+                int i = r * this.cols + c;
+                if (isPillar(board[r][c])) {
+                    this.horizontal[i] = -1;
+                    open = false;
+                } else {
+                    if (!open) {
+                        hStart[count++] = i;
+                        open = true;
+                    }
+                    this.horizontal[i] = count - 1;
+                    hEnd[count - 1] = i;
+                }
+            }
+        }
+        this.horizontalStart = Arrays.copyOf(hStart, count);
+        this.horizontalEnd = Arrays.copyOf(hEnd, count);
+
+        // vertical runs, column by column
+        count = 0;
+        for (int c = 0; c < this.cols; c++) {
+            boolean open = false;
+            for (int r = 0; r < this.rows; r++) {
+                int i = r * this.cols + c;
+                if (isPillar(board[r][c])) {
+                    this.vertical[i] = -1;
+                    open = false;
+                } else {
+                    if (!open) {
+                        vStart[count++] = i;
+                        open = true;
+                    }
+                    this.vertical[i] = count - 1;
+                    vEnd[count - 1] = i;
+                }
+            }
+        }
+        this.verticalStart = Arrays.copyOf(vStart, count);
+        this.verticalEnd = Arrays.copyOf(vEnd, count);
+    }
+
+    /**
+     * Is this tile a pillar of any kind?
+     *
+     * @param tile the tile string
+     * @return true for 'X' and the numbered pillars
+     */
+    public static boolean isPillar(String tile) {
+        switch (tile) {
+            case LasersModel.FREE_PILLAR:
+            case LasersModel.ZERO:
+            case LasersModel.ONE:
+            case LasersModel.TWO:
+            case LasersModel.THREE:
+            case LasersModel.FOUR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public int getRows() {
+        return this.rows;
+    }
+
+    public int getCols() {
+        return this.cols;
+    }
+
+    /**
+     * Is the tile a pillar?
+     *
+     * @param index row-major tile index
+     * @return true if it is a pillar
+     */
+    public boolean isPillar(int index) {
+        return this.horizontal[index] < 0;
+    }
+
+    /**
+     * @param index row-major tile index
+     * @return the horizontal segment of the tile, -1 for a pillar
+     */
+    public int getHorizontal(int index) {
+        return this.horizontal[index];
+    }
+
+    /**
+     * @param index row-major tile index
+     * @return the vertical segment of the tile, -1 for a pillar
+     */
+    public int getVertical(int index) {
+        return this.vertical[index];
+    }
+
+    /**
+     * @return how many horizontal segments the safe has
+     */
+    public int getHorizontalCount() {
+        return this.horizontalStart.length;
+    }
+
+    /**
+     * @return how many vertical segments the safe has
+     */
+    public int getVerticalCount() {
+        return this.verticalStart.length;
+    }
+
+    /**
+     * @param segment a horizontal segment
+     * @return index of its leftmost tile
+     */
+    public int getHorizontalStart(int segment) {
+        return this.horizontalStart[segment];
+    }
+
+    /**
+     * @param segment a horizontal segment
+     * @return index of its rightmost tile
+     */
+    public int getHorizontalEnd(int segment) {
+        return this.horizontalEnd[segment];
+    }
+
+    /**
+     * @param segment a vertical segment
+     * @return index of its top tile
+     */
+    public int getVerticalStart(int segment) {
+        return this.verticalStart[segment];
+    }
+
+    /**
+     * @param segment a vertical segment
+     * @return index of its bottom tile
+     */
+    public int getVerticalEnd(int segment) {
+        return this.verticalEnd[segment];
+    }
+}
@@ -0,0 +1,433 @@
+package lasers.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the solutions of safes, in memory and in a directory on
+ * disk, so a safe is only ever solved once.
+ *
+ * A safe turned or flipped is the same puzzle, so a safe is looked up by
+ * its canonical form: of the 8 ways of rotating and reflecting it, the
+ * one whose tiles come first in order.  The key is the SHA-256 of that
+ * form, and the solution is kept in that orientation and turned back to
+ * the orientation of each safe it is asked for.  Safes that have no
+ * solution are remembered too.
+ *
+ * The most recently used entries are kept in memory.  On disk each entry
+ * is a file named by its key; a hit touches it, and when the directory
+ * grows past its limit the files used longest ago are deleted.  An entry
+ * holds the whole canonical safe, so a key that collides is a miss, not
+ * a wrong answer.
+ *
+ * One cache can be used from any number of threads.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class SolutionCache {
+    /** where the default cache lives */
+    public static final Path DEFAULT_DIR = Paths.get(System.getProperty("user.home"), ".lasers", "solutions");
+    public static final int DEFAULT_MEMORY_ENTRIES = 256;
+    public static final long DEFAULT_DISK_BYTES = 64L << 20;
+    /** the first bytes of an entry file */
+    private static final byte[] MAGIC = {'L', 'S', 'R', 'K'};
+    /** the 8 rotations and reflections, each as transpose, flip rows, flip columns */
+    private static final int TRANSFORMS = 8;
+
+    /**
+     * What the cache knows of a safe.
+     */
+    public static class Entry {
+        /** the safe in canonical form, to tell colliding keys apart */
+        private final byte[] canonical;
+        /** the solution, or null if there is none */
+        private final String[][] solution;
+
+        Entry(byte[] canonical, String[][] solution) {
+            this.canonical = canonical;
+            this.solution = solution;
+        }
+
+        /**
+         * @return true if the safe has a solution
+         */
+        public boolean isSolvable() {
+            return this.solution != null;
+        }
+
+        /**
+         * @return the solved board, or null if there is none
+         */
+        public String[][] getSolution() {
+            return this.solution;
+        }
+    }
+
+    private final Path dir;
+    private final long maxDiskBytes;
+    private final LinkedHashMap<String, Entry> memory;
+    /** how many bytes the entry files take, as far as this cache knows */
+    private long diskBytes;
+
+    /**
+     * Open a cache, making its directory if it isn't there.
+     *
+     * @param dir the directory of entry files
+     * @param memoryEntries how many entries to keep in memory
+     * @param maxDiskBytes how many bytes the entry files may take
+     * @throws IOException if the directory can't be made or listed
+     */
+    public SolutionCache(Path dir, int memoryEntries, long maxDiskBytes) throws IOException {
+        this.dir = dir;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+        Files.createDirectories(dir);
+        for (Path file : entryFiles()) {
+            this.diskBytes += Files.size(file);
+        }
+    }
+
+    /**
+     * Open the cache in DEFAULT_DIR with the default limits.
+     *
+     * @return the cache
+     * @throws IOException if its directory can't be made or listed
+     */
+    public static SolutionCache openDefault() throws IOException {
+        return new SolutionCache(DEFAULT_DIR, DEFAULT_MEMORY_ENTRIES, DEFAULT_DISK_BYTES);
+    }
+
+    /**
+     * Look a safe up.
+     *
+     * @param puzzle the safe
+     * @return what the cache knows of it, with the solution turned to the
+     * orientation of the safe, or null if nothing
+     */
+    public Entry lookup(SafePuzzle puzzle) {
+        Canonical form = new Canonical(puzzle);
+        synchronized (this) {
+            Entry entry = this.memory.get(form.key);
+            if (entry == null) {
+                entry = readEntry(form.key);
+                if (entry != null) {
+                    this.memory.put(form.key, entry);
+                }
+            } else {
+                touch(form.key);
+            }
+            if (entry == null || !Arrays.equals(entry.canonical, form.bytes)) {
+                return null;
+            }
+            return new Entry(entry.canonical, entry.solution == null ? null :
+                    untransform(entry.solution, form.transform, puzzle.getRows(), puzzle.getCols()));
+        }
+    }
+
+    /**
+     * Remember what solving a safe found.  Only store the result of a
+     * search that ran to the end.
+     *
+     * @param puzzle the safe
+     * @param solution its solved board, in the orientation of the safe,
+     * or null if it has no solution
+     */
+    public void store(SafePuzzle puzzle, String[][] solution) {
+        Canonical form = new Canonical(puzzle);
+        // the cache keeps solutions in canonical orientation
+        Entry entry = new Entry(form.bytes, solution == null ? null : transform(solution, form.transform));
+        synchronized (this) {
+            this.memory.put(form.key, entry);
+            writeEntry(form.key, entry);
+        }
+    }
+
+    /**
+     * The 8 rotations and reflections are numbered 0 to 7: bit 2 is a
+     * transpose, bit 1 flips the rows and bit 0 flips the columns.
+     *
+     * @param board a board
+     * @param t which way to turn it
+     * @return a new board, turned
+     */
+    static String[][] transform(String[][] board, int t) {
+        int rows = board.length;
+        int cols = board[0].length;
+        boolean transpose = (t & 4) != 0;
+        String[][] turned = transpose ? new String[cols][rows] : new String[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                int i = (t & 2) != 0 ? rows - 1 - r : r;
+                int j = (t & 1) != 0 ? cols - 1 - c : c;
+                if (transpose) {
+                    turned[j][i] = board[r][c];
+                } else {
+                    turned[i][j] = board[r][c];
+                }
+            }
+        }
+        return turned;
+    }
+
+    /**
+     * Turn a board back: the opposite of transform.
+     *
+     * @param turned a board transform turned
+     * @param t which way it was turned
+     * @param rows the rows of the board before it was turned
+     * @param cols the columns of the board before it was turned
+     * @return a new board, as it was
+     */
+    static String[][] untransform(String[][] turned, int t, int rows, int cols) {
+        boolean transpose = (t & 4) != 0;
+        String[][] board = new String[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                int i = (t & 2) != 0 ? rows - 1 - r : r;
+                int j = (t & 1) != 0 ? cols - 1 - c : c;
+                board[r][c] = transpose ? turned[j][i] : turned[i][j];
+            }
+        }
+        return board;
+    }
+
+    /**
+     * A safe in canonical form: the orientation whose bytes (rows, cols,
+     * then the first character of each tile) come first, and its key.
+     */
+    private static class Canonical {
+        private final byte[] bytes;
+        /** the transform that turns the safe into its canonical form */
+        private final int transform;
+        private final String key;
+
+        Canonical(SafePuzzle puzzle) {
+            byte[] best = null;
+            int bestT = 0;
+            for (int t = 0; t < TRANSFORMS; t++) {
+                byte[] bytes = encode(puzzle, t);
+                if (best == null || compare(bytes, best) < 0) {
+                    best = bytes;
+                    bestT = t;
+                }
+            }
+            this.bytes = best;
+            this.transform = bestT;
+            this.key = hex(sha256(best));
+        }
+
+        /**
+         * @param puzzle a safe
+         * @param t which way to turn it
+         * @return its bytes when turned that way
+         */
+        private static byte[] encode(SafePuzzle puzzle, int t) {
+            int rows = puzzle.getRows();
+            int cols = puzzle.getCols();
+            boolean transpose = (t & 4) != 0;
+            ByteBuffer out = ByteBuffer.allocate(8 + rows * cols);
+            out.putInt(transpose ? cols : rows).putInt(transpose ? rows : cols);
+            int turnedCols = transpose ? rows : cols;
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    int i = (t & 2) != 0 ? rows - 1 - r : r;
+                    int j = (t & 1) != 0 ? cols - 1 - c : c;
+                    int at = transpose ? j * turnedCols + i : i * turnedCols + j;
+                    out.put(8 + at, (byte) puzzle.getTile(r, c).charAt(0));
+                }
+            }
+            return out.array();
+        }
+
+        /**
+         * @return a negative number, zero or a positive number as a comes
+         * before, with or after b, byte by byte
+         */
+        private static int compare(byte[] a, byte[] b) {
+            for (int i = 0; i < Math.min(a.length, b.length); i++) {
+                if (a[i] != b[i]) {
+                    return Byte.compare(a[i], b[i]);
+                }
+            }
+            return a.length - b.length;
+        }
+    }
+
+    /**
+     * @param key a key
+     * @return the entry file of the key, from disk, or null if there is
+     * none or it can't be read
+     */
+    private Entry readEntry(String key) {
+        Path file = this.dir.resolve(key);
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+            byte[] magic = new byte[MAGIC.length];
+            in.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                return null;
+            }
+            byte[] canonical = new byte[in.getInt()];
+            in.get(canonical);
+            String[][] solution = null;
+            if (in.get() == 1) {
+                ByteBuffer dims = ByteBuffer.wrap(canonical);
+                solution = new String[dims.getInt()][dims.getInt()];
+                for (String[] row : solution) {
+                    for (int c = 0; c < row.length; c++) {
+                        row[c] = String.valueOf((char) in.get()).intern();
+                    }
+                }
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(canonical, solution);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // a broken entry is the same as none
+            return null;
+        }
+    }
+
+    /**
+     * Write an entry file, then make room if the directory is too big.
+     * The file is written under another name and moved into place, so
+     * a reader never sees half of one.
+     *
+     * @param key the key
+     * @param entry the entry
+     */
+    private void writeEntry(String key, Entry entry) {
+        int tiles = entry.canonical.length - 8;
+        ByteBuffer out = ByteBuffer.allocate(MAGIC.length + 4 + entry.canonical.length + 1 +
+                (entry.solution == null ? 0 : tiles));
+        out.put(MAGIC).putInt(entry.canonical.length).put(entry.canonical);
+        out.put((byte) (entry.solution == null ? 0 : 1));
+        if (entry.solution != null) {
+            for (String[] row : entry.solution) {
+                for (String tile : row) {
+                    out.put((byte) tile.charAt(0));
+                }
+            }
+        }
+        Path file = this.dir.resolve(key);
+        try {
+            long old = Files.exists(file) ? Files.size(file) : 0;
+            Path temp = Files.createTempFile(this.dir, key, ".tmp");
+            Files.write(temp, out.array());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.diskBytes += out.capacity() - old;
+            if (this.diskBytes > this.maxDiskBytes) {
+                evict();
+            }
+        } catch (IOException e) {
+            // the entry is still in memory; the disk is only a second chance
+        }
+    }
+
+    /**
+     * Note a hit on disk, so the entry isn't the next one evicted.
+     *
+     * @param key the key
+     */
+    private void touch(String key) {
+        try {
+            Files.setLastModifiedTime(this.dir.resolve(key), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // it was evicted, or never made it to disk
+        }
+    }
+
+    /**
+     * Delete the entry files used longest ago until the directory is
+     * down to 90% of its limit.
+     *
+     * @throws IOException if the directory can't be listed
+     */
+    private void evict() throws IOException {
+        List<Path> files = entryFiles();
+        List<FileTime> times = new ArrayList<>(files.size());
+        for (Path file : files) {
+            times.add(Files.getLastModifiedTime(file));
+        }
+        Integer[] order = new Integer[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> times.get(a).compareTo(times.get(b)));
+        long total = 0;
+        for (Path file : files) {
+            total += Files.size(file);
+        }
+        long target = this.maxDiskBytes / 10 * 9;
+        for (int i = 0; i < order.length && total > target; i++) {
+            Path file = files.get(order[i]);
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                total -= size;
+            }
+        }
+        this.diskBytes = total;
+    }
+
+    /**
+     * @return the entry files in the directory
+     * @throws IOException if it can't be listed
+     */
+    private List<Path> entryFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.dir)) {
+            for (Path file : entries) {
+                if (!file.getFileName().toString().endsWith(".tmp")) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @param bytes some bytes
+     * @return their SHA-256
+     */
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param bytes some bytes
+     * @return them in hex
+     */
+    private static String hex(byte[] bytes) {
+        StringBuilder text = new StringBuilder();
+        for (byte b : bytes) {
+            text.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return text.toString();
+    }
+}
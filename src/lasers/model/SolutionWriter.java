@@ -0,0 +1,70 @@
+package lasers.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Appends the solutions of safes to a file, one fixed-width record each,
+ * in the order they are found.
+ *
+ * The file has the header of a SafeCorpus, but starts "LSRS".  Each
+ * record is:
+ * <pre>
+ * long     the index of the safe in its corpus (or list of files)
+ * byte     NO_SOLUTION, SOLVED or TIMED_OUT
+ * then a corpus record of the solved board, all zero if it wasn't solved
+ * </pre>
+ * A record is only ever added, never changed, so the file can be read
+ * while it is written and a file cut short by a crash loses at most the
+ * records still in the buffer.
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class SolutionWriter extends RecordWriter {
+    /** the first bytes of a solutions file */
+    public static final byte[] MAGIC = {'L', 'S', 'R', 'S'};
+
+    /** what came of a safe */
+    public static final byte NO_SOLUTION = 0;
+    public static final byte SOLVED = 1;
+    public static final byte TIMED_OUT = 2;
+
+    /**
+     * Open a solutions file to add to, making it if it isn't there.
+     *
+     * @param file the solutions file
+     * @param maxRows the most rows a safe may have, if the file is new
+     * @param maxCols the most columns a safe may have, if the file is new
+     * @throws IOException if it can't be opened, or isn't a solutions file
+     */
+    public SolutionWriter(Path file, int maxRows, int maxCols) throws IOException {
+        super(file, MAGIC, maxRows, maxCols, 9);
+    }
+
+    /**
+     * Add what came of a safe.
+     *
+     * @param index the index of the safe
+     * @param result NO_SOLUTION, SOLVED or TIMED_OUT
+     * @param board the solved board, or null if it wasn't solved
+     * @throws IOException if the file can't be written
+     * @throws IllegalArgumentException if the board is too big for it
+     */
+    public void add(long index, byte result, String[][] board) throws IOException {
+        if (board != null) {
+            checkFits(board);
+        }
+        ByteBuffer out = next();
+        out.putLong(index);
+        out.put(result);
+        if (board != null) {
+            SafeCorpus.pack(out, board, packedBytes());
+        } else {
+            for (int i = 0; i < packedBytes() + 2; i++) {
+                out.put((byte) 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package lasers.ptui;
+
+import lasers.model.LasersModel;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Replays a script of PTUI commands on a safe without showing every
+ * step, for regression and load tests of the model.
+ *
+ * The script is read a line at a time and each command goes to
+ * LasersModel.commandProcess as the PTUI would send it, but nothing is
+ * printed while it runs: no view is registered with the model and the
+ * model is kept quiet.  At the end the final board
+ * is shown with a summary: how many commands ran and how fast, how many
+ * of them failed, and whether the final board verifies.  A step can be
+ * shown every so many commands instead of never.  A quit command ends
+ * the replay.
+ *
+ * Usage: java lasers.ptui.ReplayPTUI safe-file script [show every n commands]
+ *
+ * @author Aby Tiet
+ * @author Annie Tiet
+ */
+public class ReplayPTUI {
+    private final LasersModel model;
+    private final int every;
+    private long commands;
+    private long errors;
+    private long nanos;
+
+    /**
+     * A replayer for a model.
+     *
+     * @param model the model to send the commands to
+     * @param every show the board after every this many commands, 0 for
+     * only at the end
+     */
+    public ReplayPTUI(LasersModel model, int every) {
+        this.model = model;
+        this.every = every;
+    }
+
+    /**
+     * Run a script of commands on the model.
+     *
+     * @param script the command file
+     * @throws IOException if it can't be read
+     */
+    public void replay(String script) throws IOException {
+        boolean quiet = this.model.isQuiet();
+        long start = System.nanoTime();
+        this.model.setQuiet(true);
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(script), StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] cmd = line.trim().split(" +");
+                if (cmd[0].isEmpty()) {
+                    continue;
+                }
+                if (cmd[0].equals("q") || cmd[0].equals("quit")) {
+                    break;
+                }
+                ++this.commands;
+                boolean done;
+                try {
+                    done = this.model.commandProcess(cmd);
+                } catch (RuntimeException e) {
+                    // a bad number or a tile off the board
+                    done = false;
+                }
+                if (!done) {
+                    ++this.errors;
+                }
+                if (this.every > 0 && this.commands % this.every == 0) {
+                    System.out.println("Step " + this.commands + ": " + line);
+                    System.out.println(this.model);
+                }
+            }
+        } finally {
+            this.model.setQuiet(quiet);
+            this.nanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Verify the board, quietly.
+     *
+     * @return true if it verifies
+     */
+    public boolean verify() {
+        boolean quiet = this.model.isQuiet();
+        this.model.setQuiet(true);
+        try {
+            return this.model.verifyBoard();
+        } finally {
+            this.model.setQuiet(quiet);
+        }
+    }
+
+    /**
+     * @return the summary of the replays so far
+     */
+    public String summary() {
+        double seconds = this.nanos / 1e9;
+        return "Commands: " + this.commands + " in " + String.format("%.3f", seconds) + " seconds (" +
+                String.format("%.0f", this.commands / Math.max(seconds, 1e-9)) + " commands/s), " +
+                this.errors + " errors";
+    }
+
+    public long getCommands() {
+        return this.commands;
+    }
+
+    public long getErrors() {
+        return this.errors;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.out.println("Usage: java lasers.ptui.ReplayPTUI safe-file script [show every n commands]");
+            return;
+        }
+        LasersModel model = new LasersModel(args[0]);
+        ReplayPTUI replay = new ReplayPTUI(model, args.length == 3 ? Integer.parseInt(args[2]) : 0);
+        replay.replay(args[1]);
+        boolean verified = replay.verify();
+        System.out.println("Final board:");
+        System.out.println(model);
+        System.out.println(replay.summary());
+        System.out.println("Verify: " + (verified ? "the safe is fully verified" : model.getStatus()));
+    }
+}
@@ -1,5 +1,7 @@
 module LasersGUI {
     requires transitive javafx.controls;
+    requires java.management;
+    requires jdk.management;
     exports lasers;
     exports lasers.gui;
 }
\ No newline at end of file